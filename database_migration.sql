@@ -13,3 +13,71 @@ ADD COLUMN IF NOT EXISTS tank_capacity_liters DOUBLE PRECISION;
 -- (Uncomment this after all vehicles have tank capacity set)
 -- ALTER TABLE vehicles ALTER COLUMN tank_capacity_liters SET NOT NULL;
 
+
+-- Precomputed consumption cycles (maintained by the application on every write)
+CREATE TABLE IF NOT EXISTS consumption_cycles (
+    id BIGSERIAL PRIMARY KEY,
+    vehicle_id BIGINT NOT NULL REFERENCES vehicles(id) ON DELETE CASCADE,
+    end_entry_id BIGINT NOT NULL,
+    from_odometer DOUBLE PRECISION NOT NULL,
+    to_odometer DOUBLE PRECISION NOT NULL,
+    from_date TIMESTAMP(6) NOT NULL,
+    to_date TIMESTAMP(6) NOT NULL,
+    distance_km DOUBLE PRECISION NOT NULL,
+    litres DOUBLE PRECISION NOT NULL,
+    consumption_per_100km DOUBLE PRECISION NOT NULL,
+    CONSTRAINT uk_consumption_cycles_vehicle_end_entry UNIQUE (vehicle_id, end_entry_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_consumption_cycles_vehicle_to_date
+    ON consumption_cycles (vehicle_id, to_date, end_entry_id);
+
+
+-- Per-vehicle monthly totals for the monthly statistics endpoints.
+-- Existing data is filled in by the rebuild job on first startup (or POST /api/admin/rollups/rebuild)
+CREATE TABLE IF NOT EXISTS monthly_rollups (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    vehicle_id BIGINT NOT NULL REFERENCES vehicles(id) ON DELETE CASCADE,
+    month_start DATE NOT NULL,
+    entry_count INTEGER NOT NULL,
+    total_litres DOUBLE PRECISION NOT NULL,
+    total_cost DOUBLE PRECISION NOT NULL,
+    price_per_litre_sum DOUBLE PRECISION NOT NULL,
+    cycle_count INTEGER NOT NULL,
+    consumption_sum DOUBLE PRECISION NOT NULL,
+    CONSTRAINT uk_monthly_rollups_vehicle_month UNIQUE (vehicle_id, month_start)
+);
+
+CREATE INDEX IF NOT EXISTS idx_monthly_rollups_user_month
+    ON monthly_rollups (user_id, month_start);
+
+
+-- Keyset pagination of a vehicle's fuel entries on (date_time, id)
+CREATE INDEX IF NOT EXISTS idx_fuel_entries_vehicle_date_id
+    ON fuel_entries (vehicle_id, date_time, id);
+
+
+-- Fuel entry ids come from a pooled sequence (50 ids per round trip) so inserts can be batched.
+-- Start past the existing ids, with room for the block Hibernate takes below the returned value.
+ALTER TABLE fuel_entries ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE fuel_entries ALTER COLUMN id DROP DEFAULT;
+CREATE SEQUENCE IF NOT EXISTS fuel_entries_seq START WITH 1 INCREMENT BY 50;
+SELECT setval('fuel_entries_seq', (SELECT COALESCE(MAX(id), 0) FROM fuel_entries) + 50);
+
+-- Same for the cycle and rollup rows a recalculation writes
+ALTER TABLE consumption_cycles ALTER COLUMN id DROP DEFAULT;
+CREATE SEQUENCE IF NOT EXISTS consumption_cycles_seq START WITH 1 INCREMENT BY 50;
+SELECT setval('consumption_cycles_seq', (SELECT COALESCE(MAX(id), 0) FROM consumption_cycles) + 50);
+ALTER TABLE monthly_rollups ALTER COLUMN id DROP DEFAULT;
+CREATE SEQUENCE IF NOT EXISTS monthly_rollups_seq START WITH 1 INCREMENT BY 50;
+SELECT setval('monthly_rollups_seq', (SELECT COALESCE(MAX(id), 0) FROM monthly_rollups) + 50);
+
+
+-- One cycle per closing entry, also on tables created before the constraint above, so a recalculation
+-- running outside the vehicle's write lane fails instead of storing a second copy of a cycle.
+-- Copies left by such races are dropped first; the kept row has the same values.
+DELETE FROM consumption_cycles c USING consumption_cycles d
+    WHERE c.vehicle_id = d.vehicle_id AND c.end_entry_id = d.end_entry_id AND c.id > d.id;
+ALTER TABLE consumption_cycles DROP CONSTRAINT IF EXISTS uk_consumption_cycles_vehicle_end_entry;
+ALTER TABLE consumption_cycles ADD CONSTRAINT uk_consumption_cycles_vehicle_end_entry UNIQUE (vehicle_id, end_entry_id);
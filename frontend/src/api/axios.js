@@ -9,14 +9,15 @@ const api = axios.create({
   },
 })
 
-// Request interceptor - add Basic Auth
+// Request interceptor - add Bearer token
 api.interceptors.request.use(
   (config) => {
     const auth = localStorage.getItem('auth')
     if (auth) {
-      const { email, password } = JSON.parse(auth)
-      const credentials = btoa(`${email}:${password}`)
-      config.headers.Authorization = `Basic ${credentials}`
+      const { accessToken } = JSON.parse(auth)
+      if (accessToken) {
+        config.headers.Authorization = `Bearer ${accessToken}`
+      }
     }
     return config
   },
@@ -25,14 +26,55 @@ api.interceptors.request.use(
   }
 )
 
+// Shared so parallel requests failing with 401 wait for a single refresh
+let refreshPromise = null
+
+const refreshTokens = () => {
+  if (!refreshPromise) {
+    const { refreshToken } = JSON.parse(localStorage.getItem('auth'))
+    refreshPromise = api
+      .post('/auth/refresh', { refreshToken }, { skipAuthRefresh: true })
+      .then((response) => {
+        localStorage.setItem('auth', JSON.stringify(response.data))
+        return response.data
+      })
+      .finally(() => {
+        refreshPromise = null
+      })
+  }
+  return refreshPromise
+}
+
 // Response interceptor - handle errors
 api.interceptors.response.use(
   (response) => response,
-  (error) => {
+  async (error) => {
+    const original = error.config
+
+    // Expired access token: refresh once and retry the request
+    if (
+      error.response?.status === 401 &&
+      original &&
+      !original.skipAuthRefresh &&
+      !original._retry &&
+      JSON.parse(localStorage.getItem('auth'))?.refreshToken
+    ) {
+      original._retry = true
+      try {
+        const tokens = await refreshTokens()
+        original.headers.Authorization = `Bearer ${tokens.accessToken}`
+        return api(original)
+      } catch (refreshError) {
+        // Fall through to the normal 401 handling below
+      }
+    }
+
     if (error.response) {
       const { status, data } = error.response
       
-      if (status === 401) {
+      if (status === 401 && original?.skipAuthRefresh && original.url === '/auth/login') {
+        // Wrong credentials on the login form; the form shows the error
+      } else if (status === 401) {
         toast.error('Authentication failed. Please login again.')
         localStorage.removeItem('auth')
         localStorage.removeItem('user')
@@ -2,6 +2,9 @@ import api from './axios'
 
 // Auth
 export const authService = {
+  login: (email, password) =>
+    api.post('/auth/login', { email, password }, { skipAuthRefresh: true }),
+
   register: (email, password) => 
     api.post('/users/register', { email, password }),
   
@@ -7,8 +7,9 @@ const useAuthStore = create((set) => ({
   
   login: async (email, password) => {
     try {
-      // Store credentials for Basic Auth
-      localStorage.setItem('auth', JSON.stringify({ email, password }))
+      // Exchange credentials for access/refresh tokens
+      const tokens = await authService.login(email, password)
+      localStorage.setItem('auth', JSON.stringify(tokens.data))
       
       // Fetch user data
       const response = await authService.getCurrentUser()
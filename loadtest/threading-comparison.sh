@@ -0,0 +1,54 @@
+#!/usr/bin/env bash
+# Load test for comparing platform and virtual request threads.
+#
+# Start the backend in one mode, run this script with a label, restart in the other mode
+# and run it again with the other label:
+#
+#   VIRTUAL_THREADS=false java -Djdk.tracePinnedThreads=short -jar target/fueltracker-0.0.1-SNAPSHOT.jar > platform.log
+#   ./loadtest/threading-comparison.sh platform
+#   VIRTUAL_THREADS=true  java -Djdk.tracePinnedThreads=short -jar target/fueltracker-0.0.1-SNAPSHOT.jar > virtual.log
+#   ./loadtest/threading-comparison.sh virtual
+#
+# Virtual threads need a Java 21+ runtime; on older runtimes both runs use platform threads
+# (the startup log says which mode is active). Pinned virtual threads are reported in the
+# application log by -Djdk.tracePinnedThreads (JDK 21-23), or as jdk.VirtualThreadPinned
+# JFR events on later JDKs.
+#
+# Requires curl and hey (https://github.com/rakyll/hey). Results go to loadtest/results/.
+
+set -euo pipefail
+
+LABEL="${1:?usage: $0 <label>}"
+BASE_URL="${BASE_URL:-http://localhost:8080}"
+EMAIL="${EMAIL:-test@example.com}"
+PASSWORD="${PASSWORD:-testpassword123}"
+DURATION="${DURATION:-30s}"
+CONCURRENCY="${CONCURRENCY:-200}"
+VEHICLE_ID="${VEHICLE_ID:-1}"
+
+command -v hey >/dev/null || { echo "hey is not installed" >&2; exit 1; }
+
+TOKEN=$(curl -sf -X POST "$BASE_URL/api/auth/login" \
+    -H 'Content-Type: application/json' \
+    -d "{\"email\":\"$EMAIL\",\"password\":\"$PASSWORD\"}" \
+    | sed -n 's/.*"accessToken":"\([^"]*\)".*/\1/p')
+[ -n "$TOKEN" ] || { echo "login failed" >&2; exit 1; }
+
+RESULTS="$(dirname "$0")/results"
+mkdir -p "$RESULTS"
+
+run() {
+    local name="$1" path="$2"
+    echo "== $LABEL $name ($CONCURRENCY concurrent, $DURATION)"
+    hey -z "$DURATION" -c "$CONCURRENCY" -H "Authorization: Bearer $TOKEN" "$BASE_URL$path" \
+        | tee "$RESULTS/$LABEL-$name.txt" \
+        | grep -E 'Requests/sec|Average|Slowest|99%|Status code|\[[0-9]{3}\]'
+}
+
+# Short warm-up so JIT and caches are in the same state for both modes
+hey -z 5s -c 10 -H "Authorization: Bearer $TOKEN" "$BASE_URL/api/fuelentries/vehicle/$VEHICLE_ID" >/dev/null
+
+run fuelentries "/api/fuelentries/vehicle/$VEHICLE_ID"
+run fuelentries-page "/api/fuelentries/vehicle/$VEHICLE_ID/page?size=50"
+run analytics-history "/api/analytics/vehicles/$VEHICLE_ID/history"
+run analytics-monthly "/api/analytics/monthly"
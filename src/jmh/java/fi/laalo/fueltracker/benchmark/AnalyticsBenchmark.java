@@ -0,0 +1,99 @@
+package fi.laalo.fueltracker.benchmark;
+
+import fi.laalo.fueltracker.model.ConsumptionCycle;
+import fi.laalo.fueltracker.model.FuelEntry;
+import fi.laalo.fueltracker.model.MonthlyRollup;
+import fi.laalo.fueltracker.model.User;
+import fi.laalo.fueltracker.model.Vehicle;
+import fi.laalo.fueltracker.service.ConsumptionCalculator;
+import fi.laalo.fueltracker.service.MonthlyRollupService;
+import fi.laalo.fueltracker.service.VehicleSeries;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each stage of the analytics pipeline on its own: entry validation, the tank
+ * capacity cycles and the monthly rollups. Inputs of a stage are prepared in
+ * setup so only that stage is measured. Run with the gc profiler (the default
+ * in the benchmark profile) to get the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AnalyticsBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    private int entries;
+
+    private Vehicle vehicle;
+    private List<FuelEntry> history;
+    private VehicleSeries validEntries;
+    private List<ConsumptionCycle> cycles;
+
+    @Setup
+    public void setUp() {
+        User user = new User();
+        user.setId(1L);
+        vehicle = new Vehicle();
+        vehicle.setId(1L);
+        vehicle.setUser(user);
+        vehicle.setTankCapacityLiters(FuelHistoryGenerator.TANK_CAPACITY);
+
+        history = FuelHistoryGenerator.generate(vehicle, entries, 42L);
+        validEntries = VehicleSeries.of(history).retainValid(null);
+        cycles = ConsumptionCalculator.calculateCycles(validEntries, FuelHistoryGenerator.TANK_CAPACITY, null)
+                .stream()
+                .map(this::toEntity)
+                .toList();
+    }
+
+    // The list adapter over the series validation, for callers that need the entries themselves
+    @Benchmark
+    public List<FuelEntry> validEntries() {
+        return ConsumptionCalculator.getValidEntries(history);
+    }
+
+    // Loading the history into a series and validating it, as the cycle and rollup recalculation does
+    @Benchmark
+    public VehicleSeries validSeries() {
+        return VehicleSeries.of(history).retainValid(null);
+    }
+
+    @Benchmark
+    public List<ConsumptionCalculator.Cycle> consumptionCycles() {
+        return ConsumptionCalculator.calculateCycles(validEntries, FuelHistoryGenerator.TANK_CAPACITY, null);
+    }
+
+    // Takes the whole history, as months without valid entries get a row too, so it includes the validation
+    @Benchmark
+    public List<MonthlyRollup> monthlyRollups() {
+        return MonthlyRollupService.buildRollups(vehicle, history, cycles);
+    }
+
+    private ConsumptionCycle toEntity(ConsumptionCalculator.Cycle cycle) {
+        ConsumptionCycle entity = new ConsumptionCycle();
+        entity.setVehicle(vehicle);
+        entity.setEndEntryId(cycle.endEntryId());
+        entity.setFromDate(cycle.fromDate());
+        entity.setToDate(cycle.toDate());
+        entity.setDistanceKm(cycle.distance());
+        entity.setLitres(cycle.fuelConsumed());
+        entity.setConsumptionPer100km(cycle.consumption());
+        return entity;
+    }
+}
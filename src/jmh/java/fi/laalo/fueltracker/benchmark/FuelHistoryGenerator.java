@@ -0,0 +1,62 @@
+package fi.laalo.fueltracker.benchmark;
+
+import fi.laalo.fueltracker.model.FuelEntry;
+import fi.laalo.fueltracker.model.Vehicle;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic fuel history for one vehicle, deterministic for a given seed.
+ * Mostly full fills with some partial top-ups, plus the kinds of bad data seen
+ * in real input: missing and mistyped odometers, duplicate timestamps and an
+ * odometer reset (instrument cluster swap) late in the history.
+ */
+public final class FuelHistoryGenerator {
+
+    public static final double TANK_CAPACITY = 55.0;
+
+    private FuelHistoryGenerator() {}
+
+    public static List<FuelEntry> generate(Vehicle vehicle, int size, long seed) {
+        Random random = new Random(seed);
+        List<FuelEntry> entries = new ArrayList<>(size);
+        LocalDateTime dateTime = LocalDateTime.of(2000, 1, 1, 7, 30);
+        double odometer = 15000.0;
+        int resetAt = size - size / 10;
+
+        for (int i = 0; i < size; i++) {
+            boolean partial = random.nextInt(4) == 0;
+            double litres = partial ? 8 + random.nextDouble() * 15 : 35 + random.nextDouble() * 22;
+            odometer += partial ? 80 + random.nextDouble() * 250 : 350 + random.nextDouble() * 500;
+            if (i == resetAt) {
+                odometer = random.nextDouble() * 1000;
+            }
+            // Same timestamp now and then, so the id order matters
+            if (random.nextInt(20) != 0) {
+                dateTime = dateTime.plusHours(6 + random.nextInt(24 * 9));
+            }
+
+            FuelEntry entry = new FuelEntry();
+            entry.setId((long) i + 1);
+            entry.setVehicle(vehicle);
+            entry.setDateTime(dateTime);
+            entry.setLitres(litres);
+            entry.setPricePerLitre(1.5 + random.nextDouble() * 0.6);
+            entry.setTotalPrice(litres * entry.getPricePerLitre());
+
+            int badData = random.nextInt(100);
+            if (badData == 0) {
+                entry.setOdometer(null);
+            } else if (badData == 1) {
+                entry.setOdometer(odometer / 10); // dropped digit
+            } else {
+                entry.setOdometer(Math.rint(odometer));
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,31 @@
+package fi.laalo.fueltracker.config;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+
+/**
+ * Security principal that carries the user's id, so handlers need no user lookup.
+ * Created by CustomUserDetailsService (Basic/login) and TokenAuthenticationFilter (bearer token).
+ */
+public class AuthenticatedUser extends org.springframework.security.core.userdetails.User {
+
+    private final Long id;
+
+    public AuthenticatedUser(Long id, String email, String password, Collection<? extends GrantedAuthority> authorities) {
+        super(email, password, authorities);
+        this.id = id;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getEmail() {
+        return getUsername();
+    }
+
+    public boolean isAdmin() {
+        return getAuthorities().stream().anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority()));
+    }
+}
@@ -0,0 +1,25 @@
+package fi.laalo.fueltracker.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Worker pool of the monthly rollup rebuild. A bean, so its threads are named and it is
+ * shut down with the application instead of living as long as the last rebuild.
+ */
+@Configuration
+public class RollupRebuildConfig {
+
+    public static final String REBUILD_EXECUTOR = "rollupRebuildExecutor";
+
+    @Bean(name = REBUILD_EXECUTOR)
+    public ThreadPoolTaskExecutor rollupRebuildExecutor(@Value("${fueltracker.rollups.rebuild.parallelism:4}") int parallelism) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, parallelism));
+        executor.setMaxPoolSize(Math.max(1, parallelism));
+        executor.setThreadNamePrefix("rollup-rebuild-");
+        return executor;
+    }
+}
@@ -1,16 +1,22 @@
 package fi.laalo.fueltracker.config;
 
 import fi.laalo.fueltracker.service.CustomUserDetailsService;
+import fi.laalo.fueltracker.service.TokenService;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.HttpStatusEntryPoint;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -23,17 +29,27 @@ import java.util.List;
 public class SecurityConfig {
 
     private final CustomUserDetailsService userDetailsService;
+    private final TokenService tokenService;
 
     @Value("${spring.web.cors.allowed-origins:http://localhost:3000,http://localhost:5173,http://localhost:5174}")
     private String allowedOrigins;
 
-    public SecurityConfig(CustomUserDetailsService userDetailsService) {
+    // HTTP Basic runs BCrypt and a user lookup on every request, so it is only an opt-in fallback
+    @Value("${fueltracker.auth.basic.enabled:false}")
+    private boolean basicAuthEnabled;
+
+    // Health and Prometheus scrapes on the management port (loopback only) need no login
+    @Value("${management.server.port:-1}")
+    private int managementPort;
+
+    public SecurityConfig(CustomUserDetailsService userDetailsService, TokenService tokenService) {
         this.userDetailsService = userDetailsService;
+        this.tokenService = tokenService;
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(MeterRegistry meterRegistry) {
+        return new TimedPasswordEncoder(new BCryptPasswordEncoder(), meterRegistry);
     }
 
     @Bean
@@ -65,12 +81,21 @@ public class SecurityConfig {
         http.cors(cors -> cors.configurationSource(corsConfigurationSource));
 
         http.authorizeHttpRequests(auth -> auth
-                .requestMatchers("/api/users/register", "/api/health").permitAll()
+                .requestMatchers("/api/users/register", "/api/health", "/api/auth/login", "/api/auth/refresh").permitAll()
+                .requestMatchers(request -> managementPort > 0 && request.getLocalPort() == managementPort
+                        && ("/actuator/prometheus".equals(request.getRequestURI()) || "/actuator/health".equals(request.getRequestURI()))).permitAll()
+                .requestMatchers("/api/admin/**", "/actuator/**").hasRole("ADMIN")
                 .anyRequest().authenticated()
         );
 
+        http.sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
         http.userDetailsService(userDetailsService);
-        http.httpBasic(httpBasic -> {});
+        http.addFilterBefore(new TokenAuthenticationFilter(tokenService), UsernamePasswordAuthenticationFilter.class);
+        http.exceptionHandling(exceptions -> exceptions.authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED)));
+
+        if (basicAuthEnabled) {
+            http.httpBasic(httpBasic -> {});
+        }
 
         return http.build();
     }
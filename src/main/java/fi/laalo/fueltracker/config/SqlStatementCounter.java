@@ -0,0 +1,58 @@
+package fi.laalo.fueltracker.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Counts the SQL statements Hibernate prepares for one request. Registered as the
+ * statement inspector; statements run while no counter is bound (startup, scheduled
+ * jobs) are not counted.
+ */
+public final class SqlStatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<AtomicInteger> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Counter bound to the calling thread, or null
+     */
+    public static AtomicInteger current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Run the work counting into the given counter; work handed to another thread
+     * (e.g. the analytics executor) counts into the same request
+     */
+    public static <T> T bind(AtomicInteger counter, Supplier<T> work) {
+        AtomicInteger previous = swap(counter);
+        try {
+            return work.get();
+        } finally {
+            swap(previous);
+        }
+    }
+
+    /**
+     * Bind the counter (null unbinds) and return the one it replaced
+     */
+    static AtomicInteger swap(AtomicInteger counter) {
+        AtomicInteger previous = CURRENT.get();
+        if (counter != null) {
+            CURRENT.set(counter);
+        } else {
+            CURRENT.remove();
+        }
+        return previous;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        AtomicInteger counter = CURRENT.get();
+        if (counter != null) {
+            counter.incrementAndGet();
+        }
+        return sql;
+    }
+}
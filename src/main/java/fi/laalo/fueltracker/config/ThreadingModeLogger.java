@@ -0,0 +1,40 @@
+package fi.laalo.fueltracker.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Logs which threads handle requests. spring.threads.virtual.enabled only takes effect
+ * on a Java 21+ runtime, so the setting alone does not tell which mode is running.
+ */
+@Component
+public class ThreadingModeLogger {
+
+    private static final Logger log = LoggerFactory.getLogger(ThreadingModeLogger.class);
+
+    private final Environment environment;
+
+    public ThreadingModeLogger(Environment environment) {
+        this.environment = environment;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void logThreadingMode() {
+        boolean requested = environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false);
+        int javaVersion = Runtime.version().feature();
+        String poolSize = environment.getProperty("spring.datasource.hikari.maximum-pool-size", "10");
+
+        if (requested && javaVersion >= 21) {
+            log.info("Requests run on virtual threads (database pool size {})", poolSize);
+        } else if (requested) {
+            log.warn("Virtual threads requested but the runtime is Java {}; requests run on platform threads", javaVersion);
+        } else {
+            log.info("Requests run on platform threads (max {}, database pool size {})",
+                    environment.getProperty("server.tomcat.threads.max", "200"), poolSize);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package fi.laalo.fueltracker.controller;
+
+import fi.laalo.fueltracker.dto.RollupRebuildStatusDTO;
+import fi.laalo.fueltracker.service.MonthlyRollupRebuildJob;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    private final MonthlyRollupRebuildJob rebuildJob;
+
+    public AdminController(MonthlyRollupRebuildJob rebuildJob) {
+        this.rebuildJob = rebuildJob;
+    }
+
+    /**
+     * Start a full rebuild of the monthly rollups
+     */
+    @PostMapping("/rollups/rebuild")
+    public ResponseEntity<RollupRebuildStatusDTO> startRollupRebuild() {
+        return ResponseEntity.accepted().body(rebuildJob.start());
+    }
+
+    /**
+     * Progress of the current or last rebuild
+     */
+    @GetMapping("/rollups/rebuild")
+    public RollupRebuildStatusDTO getRollupRebuildStatus() {
+        return rebuildJob.getStatus();
+    }
+}
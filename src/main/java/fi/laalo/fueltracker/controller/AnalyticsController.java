@@ -1,94 +1,94 @@
 package fi.laalo.fueltracker.controller;
 
-import fi.laalo.fueltracker.model.User;
-import fi.laalo.fueltracker.model.Vehicle;
+import fi.laalo.fueltracker.config.AuthenticatedUser;
 import fi.laalo.fueltracker.service.FuelAnalyticsService;
-import fi.laalo.fueltracker.service.UserService;
+import fi.laalo.fueltracker.service.ServerTiming;
 import fi.laalo.fueltracker.service.VehicleService;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.YearMonth;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
+/**
+ * Ownership is checked on the request thread; the computations run on the AnalyticsExecutor,
+ * so heavy histories do not hold the request threads that the CRUD endpoints need.
+ * With fueltracker.analytics.server-timing.enabled the responses carry a Server-Timing header
+ * with queue wait, compute time and the stages of the computation; cached answers and answers
+ * shared with a request already computing them have none. Serialization happens after the
+ * headers are written, so it is not included.
+ */
 @RestController
 @RequestMapping("/api/analytics")
 public class AnalyticsController {
 
     private final FuelAnalyticsService analyticsService;
-    private final UserService userService;
     private final VehicleService vehicleService;
+    private final boolean serverTimingEnabled;
 
     public AnalyticsController(FuelAnalyticsService analyticsService, 
-                               UserService userService, 
-                               VehicleService vehicleService) {
+                               VehicleService vehicleService,
+                               @Value("${fueltracker.analytics.server-timing.enabled:false}") boolean serverTimingEnabled) {
         this.analyticsService = analyticsService;
-        this.userService = userService;
         this.vehicleService = vehicleService;
-    }
-
-    private String getCurrentEmail() {
-        return SecurityContextHolder.getContext().getAuthentication().getName();
+        this.serverTimingEnabled = serverTimingEnabled;
     }
 
     /**
      * Get average consumption for a specific vehicle
      */
     @GetMapping("/vehicles/{vehicleId}/consumption")
-    public double getVehicleConsumption(@PathVariable Long vehicleId) {
-        String email = getCurrentEmail();
-        User user = userService.getByEmail(email);
-        
-        Vehicle vehicle = vehicleService.getById(vehicleId);
+    public CompletableFuture<ResponseEntity<Double>> getVehicleConsumption(@PathVariable Long vehicleId, AuthenticatedUser currentUser) {
+        vehicleService.checkOwnership(vehicleId, currentUser.getId());
         
-        if (!vehicle.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Not your vehicle");
-        }
-        
-        return analyticsService.getConsumptionPerVehicle(vehicle);
+        return compute(timing -> analyticsService.getConsumptionPerVehicle(vehicleId, timing));
     }
 
     /**
      * Get consumption history for a specific vehicle
      */
     @GetMapping("/vehicles/{vehicleId}/history")
-    public List<FuelAnalyticsService.ConsumptionData> getVehicleConsumptionHistory(@PathVariable Long vehicleId) {
-        String email = getCurrentEmail();
-        User user = userService.getByEmail(email);
-        
-        Vehicle vehicle = vehicleService.getById(vehicleId);
+    public CompletableFuture<ResponseEntity<List<FuelAnalyticsService.ConsumptionData>>> getVehicleConsumptionHistory(@PathVariable Long vehicleId, AuthenticatedUser currentUser) {
+        vehicleService.checkOwnership(vehicleId, currentUser.getId());
         
-        if (!vehicle.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Not your vehicle");
-        }
-        
-        return analyticsService.getConsumptionHistory(vehicle);
+        return compute(timing -> analyticsService.getConsumptionHistory(vehicleId, timing));
     }
 
     /**
      * Get monthly statistics for a specific month
      */
     @GetMapping("/monthly/{year}/{month}")
-    public FuelAnalyticsService.MonthlyStatistics getMonthlyStatistics(
+    public CompletableFuture<ResponseEntity<FuelAnalyticsService.MonthlyStatistics>> getMonthlyStatistics(
             @PathVariable int year, 
-            @PathVariable int month) {
-        String email = getCurrentEmail();
-        User user = userService.getByEmail(email);
-        
+            @PathVariable int month, AuthenticatedUser currentUser) {
         YearMonth yearMonth = YearMonth.of(year, month);
-        return analyticsService.getMonthlyStatistics(user, yearMonth);
+        Long userId = currentUser.getId();
+        return compute(timing -> analyticsService.getMonthlyStatistics(userId, yearMonth, timing));
     }
 
     /**
      * Get all monthly statistics for the current user
      */
     @GetMapping("/monthly")
-    public Map<YearMonth, FuelAnalyticsService.MonthlyStatistics> getAllMonthlyStatistics() {
-        String email = getCurrentEmail();
-        User user = userService.getByEmail(email);
-        
-        return analyticsService.getAllMonthlyStatistics(user);
+    public CompletableFuture<ResponseEntity<Map<YearMonth, FuelAnalyticsService.MonthlyStatistics>>> getAllMonthlyStatistics(AuthenticatedUser currentUser) {
+        Long userId = currentUser.getId();
+        return compute(timing -> analyticsService.getAllMonthlyStatistics(userId, timing));
+    }
+
+    private <T> CompletableFuture<ResponseEntity<T>> compute(Function<ServerTiming, CompletableFuture<T>> work) {
+        ServerTiming timing = serverTimingEnabled ? new ServerTiming() : null;
+        return work.apply(timing).thenApply(body -> {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            String serverTiming = timing != null ? timing.toHeaderValue() : "";
+            if (!serverTiming.isEmpty()) {
+                response.header("Server-Timing", serverTiming);
+            }
+            return response.body(body);
+        });
     }
 }
 
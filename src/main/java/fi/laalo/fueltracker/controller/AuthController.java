@@ -1,22 +1,73 @@
 package fi.laalo.fueltracker.controller;
 
+import fi.laalo.fueltracker.config.AuthenticatedUser;
+import fi.laalo.fueltracker.dto.LoginRequestDTO;
+import fi.laalo.fueltracker.dto.RefreshTokenRequestDTO;
+import fi.laalo.fueltracker.dto.TokenResponseDTO;
 import fi.laalo.fueltracker.dto.UserRegisterRequestDTO;
 import fi.laalo.fueltracker.model.User;
 import fi.laalo.fueltracker.repository.UserRepository;
+import fi.laalo.fueltracker.service.CustomUserDetailsService;
+import fi.laalo.fueltracker.service.TokenService;
+import jakarta.validation.Valid;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Collection;
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/auth")
 public class AuthController {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final AuthenticationManager authenticationManager;
+    private final CustomUserDetailsService userDetailsService;
+    private final TokenService tokenService;
 
     public AuthController(UserRepository userRepository,
-                          PasswordEncoder passwordEncoder) {
+                          PasswordEncoder passwordEncoder,
+                          AuthenticationManager authenticationManager,
+                          CustomUserDetailsService userDetailsService,
+                          TokenService tokenService) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.authenticationManager = authenticationManager;
+        this.userDetailsService = userDetailsService;
+        this.tokenService = tokenService;
+    }
+
+    // Checks the password once and returns signed tokens for the following requests
+    @PostMapping("/login")
+    public TokenResponseDTO login(@Valid @RequestBody LoginRequestDTO dto) {
+        Authentication authentication = authenticationManager.authenticate(
+                UsernamePasswordAuthenticationToken.unauthenticated(dto.email(), dto.password()));
+
+        AuthenticatedUser user = (AuthenticatedUser) authentication.getPrincipal();
+        return tokenService.issueTokens(user.getId(), user.getEmail(), roles(user.getAuthorities()));
+    }
+
+    // New token pair from a refresh token; roles are reloaded so changes apply on the next refresh
+    @PostMapping("/refresh")
+    public TokenResponseDTO refresh(@Valid @RequestBody RefreshTokenRequestDTO dto) {
+        TokenService.TokenClaims claims = tokenService.verify(dto.refreshToken(), TokenService.REFRESH);
+        if (claims == null) {
+            throw new BadCredentialsException("Invalid or expired refresh token");
+        }
+
+        UserDetails userDetails = userDetailsService.loadUserByUsername(claims.email());
+        return tokenService.issueTokens(claims.userId(), claims.email(), roles(userDetails.getAuthorities()));
+    }
+
+    private List<String> roles(Collection<? extends GrantedAuthority> authorities) {
+        return authorities.stream().map(GrantedAuthority::getAuthority).toList();
     }
 
     @PostMapping("/register")
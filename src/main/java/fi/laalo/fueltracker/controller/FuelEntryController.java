@@ -1,20 +1,34 @@
 package fi.laalo.fueltracker.controller;
 
+import fi.laalo.fueltracker.config.AuthenticatedUser;
+import fi.laalo.fueltracker.dto.FuelEntryImportResultDTO;
+import fi.laalo.fueltracker.dto.FuelEntryPageDTO;
 import fi.laalo.fueltracker.dto.FuelEntryRequestDTO;
 import fi.laalo.fueltracker.dto.FuelEntryResponseDTO;
 import fi.laalo.fueltracker.mapper.FuelEntryMapper;
 import fi.laalo.fueltracker.model.FuelEntry;
-import fi.laalo.fueltracker.model.User;
 import fi.laalo.fueltracker.model.Vehicle;
+import fi.laalo.fueltracker.service.FuelEntryExportService;
+import fi.laalo.fueltracker.service.FuelEntryImportService;
 import fi.laalo.fueltracker.service.FuelEntryService;
 import fi.laalo.fueltracker.service.UserService;
 import fi.laalo.fueltracker.service.VehicleService;
+import fi.laalo.fueltracker.service.VehicleWriteLanes;
 import jakarta.validation.Valid;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/fuelentries")
@@ -23,182 +37,204 @@ public class FuelEntryController {
     private final FuelEntryService fuelEntryService;
     private final UserService userService;
     private final VehicleService vehicleService;
+    private final FuelEntryExportService exportService;
+    private final FuelEntryImportService importService;
+    private final VehicleWriteLanes writeLanes;
 
-    public FuelEntryController(FuelEntryService fuelEntryService, UserService userService, VehicleService vehicleService) {
+    public FuelEntryController(FuelEntryService fuelEntryService, UserService userService, VehicleService vehicleService,
+                               FuelEntryExportService exportService, FuelEntryImportService importService,
+                               VehicleWriteLanes writeLanes) {
         this.fuelEntryService = fuelEntryService;
         this.userService = userService;
         this.vehicleService = vehicleService;
-    }
-
-    private String getCurrentEmail() {
-        return SecurityContextHolder.getContext().getAuthentication().getName();
+        this.exportService = exportService;
+        this.importService = importService;
+        this.writeLanes = writeLanes;
     }
 
     @PostMapping
-    public FuelEntryResponseDTO createEntry(@Valid @RequestBody FuelEntryRequestDTO dto) {
-
-        String email = getCurrentEmail();
-        User user = userService.getByEmail(email);
-
-        Vehicle v = vehicleService.getById(dto.vehicleId());
-
-        if (!v.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Not your vehicle");
-        }
-
-        // Calculate odometer reading
-        Double odometerReading = dto.odometer();
-        
-        if (dto.useTrip() != null && dto.useTrip() && dto.tripDistance() != null && dto.tripDistance() > 0) {
-            // Use trip distance: get last entry's odometer or vehicle's initial odometer
-            List<FuelEntry> existingEntries = fuelEntryService.getByVehicle(v);
-            
-            if (existingEntries.isEmpty()) {
-                // First entry: use vehicle's initial odometer + trip
-                if (v.getInitialOdometer() != null) {
+    public FuelEntryResponseDTO createEntry(@Valid @RequestBody FuelEntryRequestDTO dto, AuthenticatedUser currentUser) {
+        Vehicle v = vehicleService.getOwnedVehicle(dto.vehicleId(), currentUser.getId());
+
+        // The vehicle's lane keeps a concurrent write from reading the same last odometer
+        return writeLanes.inLane(v.getId(), () -> {
+            // Calculate odometer reading
+            Double odometerReading = dto.odometer();
+        
+            if (dto.useTrip() != null && dto.useTrip() && dto.tripDistance() != null && dto.tripDistance() > 0) {
+                // Use trip distance: get last entry's odometer or vehicle's initial odometer
+                Optional<Double> lastOdometer = fuelEntryService.getLatestOdometer(v.getId(), null);
+
+                if (lastOdometer.isPresent()) {
+                    // Not first entry: use last entry's odometer + trip
+                    odometerReading = lastOdometer.get() + dto.tripDistance();
+                } else if (v.getInitialOdometer() != null) {
+                    // First entry: use vehicle's initial odometer + trip
                     odometerReading = v.getInitialOdometer() + dto.tripDistance();
                 } else {
                     throw new RuntimeException("Vehicle has no initial odometer. Please set it when creating the vehicle or enter odometer reading directly.");
                 }
-            } else {
-                // Not first entry: use last entry's odometer + trip
-                // Sort by date to get the most recent entry
-                FuelEntry lastEntry = existingEntries.stream()
-                        .max((e1, e2) -> e1.getDateTime().compareTo(e2.getDateTime()))
-                        .orElse(null);
-                
-                if (lastEntry != null) {
-                    odometerReading = lastEntry.getOdometer() + dto.tripDistance();
-                } else {
-                    throw new RuntimeException("Could not find previous fuel entry");
-                }
+            } else if (odometerReading == null) {
+                throw new RuntimeException("Either odometer reading or trip distance must be provided");
             }
-        } else if (odometerReading == null) {
-            throw new RuntimeException("Either odometer reading or trip distance must be provided");
-        }
 
-        FuelEntry entry = new FuelEntry();
-        entry.setUser(user);
-        entry.setVehicle(v);
-        entry.setDateTime(dto.dateTime());
-        entry.setLitres(dto.litres());
-        entry.setOdometer(odometerReading);
-        entry.setPricePerLitre(dto.pricePerLitre());
-        entry.setTotalPrice(dto.totalPrice());
-        entry.setLocation(dto.location());
-        entry.setNotes(dto.notes());
-
-        return FuelEntryMapper.toDto(fuelEntryService.save(entry));
+            FuelEntry entry = new FuelEntry();
+            entry.setUser(userService.getReference(currentUser.getId()));
+            entry.setVehicle(v);
+            entry.setDateTime(dto.dateTime());
+            entry.setLitres(dto.litres());
+            entry.setOdometer(odometerReading);
+            entry.setPricePerLitre(dto.pricePerLitre());
+            entry.setTotalPrice(dto.totalPrice());
+            entry.setLocation(dto.location());
+            entry.setNotes(dto.notes());
+
+            return FuelEntryMapper.toDto(fuelEntryService.save(entry));
+        });
     }
 
     @GetMapping("/vehicle/{vehicleId}")
-    public List<FuelEntryResponseDTO> getEntriesByVehicle(@PathVariable Long vehicleId) {
+    public List<FuelEntryResponseDTO> getEntriesByVehicle(@PathVariable Long vehicleId, AuthenticatedUser currentUser) {
+        vehicleService.checkOwnership(vehicleId, currentUser.getId());
+
+        return fuelEntryService.getDtosByVehicleId(vehicleId);
+    }
 
-        String email = getCurrentEmail();
-        User user = userService.getByEmail(email);
+    /**
+     * Cursor-paginated entries of a vehicle, oldest first.
+     * Optional from/to (ISO date-time) limit the range to [from, to).
+     */
+    @GetMapping("/vehicle/{vehicleId}/page")
+    public FuelEntryPageDTO getEntryPageByVehicle(
+            @PathVariable Long vehicleId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) Integer size, AuthenticatedUser currentUser) {
+        vehicleService.checkOwnership(vehicleId, currentUser.getId());
+
+        return fuelEntryService.getPageByVehicle(vehicleId, from, to, after, before, size);
+    }
 
-        Vehicle v = vehicleService.getById(vehicleId);
+    /**
+     * Bulk import from a CSV upload (multipart field "file"); same columns as the export,
+     * with trip_distance allowed in place of odometer. Valid rows are imported, the others reported.
+     */
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public FuelEntryImportResultDTO importEntries(@RequestParam("file") MultipartFile file, AuthenticatedUser currentUser) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return importService.importCsv(in, currentUser.getId());
+        }
+    }
 
-        if (!v.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Not your vehicle");
+    /**
+     * The user's whole history as CSV or NDJSON (format=csv|ndjson), streamed as it is read.
+     * Optional vehicleId and from/to (ISO date-time, [from, to)) narrow it down;
+     * gzip=true compresses the download.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportEntries(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) Long vehicleId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "false") boolean gzip, AuthenticatedUser currentUser) {
+        FuelEntryExportService.Format exportFormat = FuelEntryExportService.Format.of(format);
+        if (vehicleId != null) {
+            vehicleService.checkOwnership(vehicleId, currentUser.getId());
         }
+        Long userId = currentUser.getId();
+
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream compressed = new GZIPOutputStream(out, 8192);
+                exportService.export(compressed, exportFormat, userId, vehicleId, from, to);
+                compressed.finish();
+            } else {
+                exportService.export(out, exportFormat, userId, vehicleId, from, to);
+            }
+        };
 
-        return fuelEntryService.getByVehicle(v).stream()
-                .map(FuelEntryMapper::toDto)
-                .toList();
+        String filename = "fuel-history." + exportFormat.extension() + (gzip ? ".gz" : "");
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, gzip ? "application/gzip" : exportFormat.contentType() + ";charset=UTF-8")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
     }
 
     @GetMapping("/{id}")
-    public FuelEntryResponseDTO getEntry(@PathVariable Long id) {
-        String email = getCurrentEmail();
-        User user = userService.getByEmail(email);
-        
-        FuelEntry entry = fuelEntryService.getEntryById(id);
-        
-        if (entry == null) {
-            throw new RuntimeException("Fuel entry not found");
-        }
-        
-        if (!entry.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Not your fuel entry");
-        }
-        
-        return FuelEntryMapper.toDto(entry);
+    public FuelEntryResponseDTO getEntry(@PathVariable Long id, AuthenticatedUser currentUser) {
+        return fuelEntryService.getOwnedEntryDto(id, currentUser.getId());
     }
 
     @PutMapping("/{id}")
-    public FuelEntryResponseDTO updateEntry(@PathVariable Long id, @Valid @RequestBody FuelEntryRequestDTO dto) {
-        String email = getCurrentEmail();
-        User user = userService.getByEmail(email);
-        
-        FuelEntry entry = fuelEntryService.getEntryById(id);
-        
-        if (entry == null) {
-            throw new RuntimeException("Fuel entry not found");
-        }
-        
-        if (!entry.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Not your fuel entry");
-        }
-        
+    public FuelEntryResponseDTO updateEntry(@PathVariable Long id, @Valid @RequestBody FuelEntryRequestDTO dto, AuthenticatedUser currentUser) {
         // Verify vehicle ownership
-        Vehicle v = vehicleService.getById(dto.vehicleId());
-        if (!v.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Not your vehicle");
-        }
-        
-        // Calculate odometer reading for update
-        Double odometerReading = dto.odometer();
-        
-        if (dto.useTrip() != null && dto.useTrip() && dto.tripDistance() != null && dto.tripDistance() > 0) {
-            // Use trip distance: get previous entry's odometer (not the one being updated)
-            List<FuelEntry> existingEntries = fuelEntryService.getByVehicle(v);
-            FuelEntry previousEntry = existingEntries.stream()
-                    .filter(e -> !e.getId().equals(id))
-                    .max((e1, e2) -> e1.getDateTime().compareTo(e2.getDateTime()))
-                    .orElse(null);
-            
-            if (previousEntry != null) {
-                odometerReading = previousEntry.getOdometer() + dto.tripDistance();
-            } else if (v.getInitialOdometer() != null) {
-                odometerReading = v.getInitialOdometer() + dto.tripDistance();
-            } else {
-                throw new RuntimeException("Cannot calculate odometer from trip. Please enter odometer reading directly.");
+        Vehicle v = vehicleService.getOwnedVehicle(dto.vehicleId(), currentUser.getId());
+
+        while (true) {
+            // A move changes both histories, so the entry's current vehicle is locked as well
+            Long previousVehicleId = fuelEntryService.getOwnedEntryVehicleId(id, currentUser.getId());
+
+            Optional<FuelEntryResponseDTO> updated = writeLanes.inLanes(List.of(previousVehicleId, v.getId()), () -> {
+                // Loaded inside the lanes, so a write that held them before is seen
+                FuelEntry entry = fuelEntryService.getOwnedEntry(id, currentUser.getId());
+                if (!entry.getVehicle().getId().equals(previousVehicleId)) {
+                    // Moved by a concurrent update in the meantime: lock its new vehicle and try again
+                    return Optional.empty();
+                }
+
+                // Calculate odometer reading for update
+                Double odometerReading = dto.odometer();
+
+                if (dto.useTrip() != null && dto.useTrip() && dto.tripDistance() != null && dto.tripDistance() > 0) {
+                    // Use trip distance: get previous entry's odometer (not the one being updated)
+                    Optional<Double> previousOdometer = fuelEntryService.getLatestOdometer(v.getId(), id);
+
+                    if (previousOdometer.isPresent()) {
+                        odometerReading = previousOdometer.get() + dto.tripDistance();
+                    } else if (v.getInitialOdometer() != null) {
+                        odometerReading = v.getInitialOdometer() + dto.tripDistance();
+                    } else {
+                        throw new RuntimeException("Cannot calculate odometer from trip. Please enter odometer reading directly.");
+                    }
+                } else if (odometerReading == null) {
+                    throw new RuntimeException("Either odometer reading or trip distance must be provided");
+                }
+
+                // Position before the update, so derived data is recalculated from the right point
+                LocalDateTime previousDateTime = entry.getDateTime();
+
+                // Update fields
+                entry.setVehicle(v);
+                entry.setDateTime(dto.dateTime());
+                entry.setLitres(dto.litres());
+                entry.setOdometer(odometerReading);
+                entry.setPricePerLitre(dto.pricePerLitre());
+                entry.setTotalPrice(dto.totalPrice());
+                entry.setLocation(dto.location());
+                entry.setNotes(dto.notes());
+
+                return Optional.of(FuelEntryMapper.toDto(fuelEntryService.update(entry, previousDateTime, previousVehicleId)));
+            });
+
+            if (updated.isPresent()) {
+                return updated.get();
             }
-        } else if (odometerReading == null) {
-            throw new RuntimeException("Either odometer reading or trip distance must be provided");
         }
-        
-        // Update fields
-        entry.setVehicle(v);
-        entry.setDateTime(dto.dateTime());
-        entry.setLitres(dto.litres());
-        entry.setOdometer(odometerReading);
-        entry.setPricePerLitre(dto.pricePerLitre());
-        entry.setTotalPrice(dto.totalPrice());
-        entry.setLocation(dto.location());
-        entry.setNotes(dto.notes());
-        
-        FuelEntry updated = fuelEntryService.save(entry);
-        return FuelEntryMapper.toDto(updated);
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteEntry(@PathVariable Long id) {
-        String email = getCurrentEmail();
-        User user = userService.getByEmail(email);
-        
-        FuelEntry entry = fuelEntryService.getEntryById(id);
-        
-        if (entry == null) {
-            throw new RuntimeException("Fuel entry not found");
-        }
-        
-        if (!entry.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Not your fuel entry");
+    public ResponseEntity<Void> deleteEntry(@PathVariable Long id, AuthenticatedUser currentUser) {
+        while (true) {
+            // The vehicle's derived data is rewritten, so the delete takes its lane like any other write
+            Long vehicleId = fuelEntryService.getOwnedEntryVehicleId(id, currentUser.getId());
+
+            // False when a concurrent update moved it in the meantime: lock its new vehicle and try again
+            if (writeLanes.inLane(vehicleId, () -> fuelEntryService.deleteEntry(id, vehicleId))) {
+                return ResponseEntity.noContent().build();
+            }
         }
-        
-        fuelEntryService.deleteEntry(id);
-        return ResponseEntity.noContent().build();
     }
 }
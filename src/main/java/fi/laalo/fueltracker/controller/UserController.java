@@ -1,5 +1,6 @@
 package fi.laalo.fueltracker.controller;
 
+import fi.laalo.fueltracker.config.AuthenticatedUser;
 import fi.laalo.fueltracker.dto.UserRegisterRequestDTO;
 import fi.laalo.fueltracker.dto.UserResponseDTO;
 import fi.laalo.fueltracker.mapper.UserMapper;
@@ -24,10 +25,9 @@ private UserService userService;
 
 // Get current logged-in user
 @GetMapping("/me")
-public ResponseEntity<UserResponseDTO> getCurrentUser() {
-    String email = org.springframework.security.core.context.SecurityContextHolder
-            .getContext().getAuthentication().getName();
-    User user = userService.getByEmail(email);
+public ResponseEntity<UserResponseDTO> getCurrentUser(AuthenticatedUser currentUser) {
+    User user = userService.getUserById(currentUser.getId())
+            .orElseThrow(() -> new RuntimeException("User not found"));
     UserResponseDTO response = UserMapper.toDto(user);
     return ResponseEntity.ok(response);
 }
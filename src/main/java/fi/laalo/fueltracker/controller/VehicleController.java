@@ -1,15 +1,15 @@
 package fi.laalo.fueltracker.controller;
 
+import fi.laalo.fueltracker.config.AuthenticatedUser;
 import fi.laalo.fueltracker.dto.VehicleRequestDTO;
 import fi.laalo.fueltracker.dto.VehicleResponseDTO;
 import fi.laalo.fueltracker.mapper.VehicleMapper;
-import fi.laalo.fueltracker.model.User;
 import fi.laalo.fueltracker.model.Vehicle;
 import fi.laalo.fueltracker.service.UserService;
 import fi.laalo.fueltracker.service.VehicleService;
+import fi.laalo.fueltracker.service.VehicleWriteLanes;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -20,90 +20,65 @@ public class VehicleController {
 
     private final VehicleService vehicleService;
     private final UserService userService;
+    private final VehicleWriteLanes writeLanes;
 
-    public VehicleController(VehicleService vehicleService, UserService userService) {
+    public VehicleController(VehicleService vehicleService, UserService userService, VehicleWriteLanes writeLanes) {
         this.vehicleService = vehicleService;
         this.userService = userService;
-    }
-
-    private String getCurrentEmail() {
-        return SecurityContextHolder.getContext().getAuthentication().getName();
+        this.writeLanes = writeLanes;
     }
 
     @GetMapping
-    public List<VehicleResponseDTO> getVehicles() {
-        String email = getCurrentEmail();
-        User user = userService.getByEmail(email);
-
-        return vehicleService.getVehiclesByUser(user)
-                .stream()
-                .map(VehicleMapper::toDto)
-                .toList();
+    public List<VehicleResponseDTO> getVehicles(AuthenticatedUser currentUser) {
+        return vehicleService.getVehicleDtosByUserId(currentUser.getId());
     }
 
     @GetMapping("/{id}")
-    public VehicleResponseDTO getVehicle(@PathVariable Long id) {
-        String email = getCurrentEmail();
-        User user = userService.getByEmail(email);
-        
-        Vehicle vehicle = vehicleService.getById(id);
-        
-        if (!vehicle.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Not your vehicle");
-        }
-        
-        return VehicleMapper.toDto(vehicle);
+    public VehicleResponseDTO getVehicle(@PathVariable Long id, AuthenticatedUser currentUser) {
+        return vehicleService.getOwnedVehicleDto(id, currentUser.getId());
     }
 
     @PostMapping
-    public VehicleResponseDTO createVehicle(@Valid @RequestBody VehicleRequestDTO dto) {
-
-        String email = getCurrentEmail();
-        User user = userService.getByEmail(email);
-
+    public VehicleResponseDTO createVehicle(@Valid @RequestBody VehicleRequestDTO dto, AuthenticatedUser currentUser) {
         Vehicle v = VehicleMapper.fromDto(dto);
-        v.setUser(user);
+        v.setUser(userService.getReference(currentUser.getId()));
 
         Vehicle saved = vehicleService.save(v);
         return VehicleMapper.toDto(saved);
     }
 
     @PutMapping("/{id}")
-    public VehicleResponseDTO updateVehicle(@PathVariable Long id, @Valid @RequestBody VehicleRequestDTO dto) {
-        String email = getCurrentEmail();
-        User user = userService.getByEmail(email);
-        
-        Vehicle vehicle = vehicleService.getById(id);
-        
-        if (!vehicle.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Not your vehicle");
-        }
-        
-        // Update fields
-        vehicle.setMake(dto.make());
-        vehicle.setModel(dto.model());
-        vehicle.setFuelType(dto.fuelType());
-        vehicle.setManufacturingYear(dto.manufacturingYear());
-        vehicle.setLicensePlate(dto.licensePlate());
-        vehicle.setInitialOdometer(dto.initialOdometer());
-        vehicle.setTankCapacityLiters(dto.tankCapacityLiters());
-        
-        Vehicle updated = vehicleService.save(vehicle);
-        return VehicleMapper.toDto(updated);
+    public VehicleResponseDTO updateVehicle(@PathVariable Long id, @Valid @RequestBody VehicleRequestDTO dto, AuthenticatedUser currentUser) {
+        vehicleService.checkOwnership(id, currentUser.getId());
+
+        // A tank capacity change rewrites the vehicle's cycles and rollups, so it runs in the vehicle's lane
+        return writeLanes.inLane(id, () -> {
+            Vehicle vehicle = vehicleService.getOwnedVehicle(id, currentUser.getId());
+
+            Double previousTankCapacity = vehicle.getTankCapacityLiters();
+
+            // Update fields
+            vehicle.setMake(dto.make());
+            vehicle.setModel(dto.model());
+            vehicle.setFuelType(dto.fuelType());
+            vehicle.setManufacturingYear(dto.manufacturingYear());
+            vehicle.setLicensePlate(dto.licensePlate());
+            vehicle.setInitialOdometer(dto.initialOdometer());
+            vehicle.setTankCapacityLiters(dto.tankCapacityLiters());
+
+            Vehicle updated = vehicleService.update(vehicle, previousTankCapacity);
+            return VehicleMapper.toDto(updated);
+        });
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteVehicle(@PathVariable Long id) {
-        String email = getCurrentEmail();
-        User user = userService.getByEmail(email);
-        
-        Vehicle vehicle = vehicleService.getById(id);
-        
-        if (!vehicle.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Not your vehicle");
-        }
-        
-        vehicleService.deleteVehicle(id);
+    public ResponseEntity<Void> deleteVehicle(@PathVariable Long id, AuthenticatedUser currentUser) {
+        vehicleService.checkOwnership(id, currentUser.getId());
+
+        writeLanes.inLane(id, () -> {
+            vehicleService.deleteVehicle(id);
+            return null;
+        });
         return ResponseEntity.noContent().build();
     }
 }
@@ -0,0 +1,14 @@
+package fi.laalo.fueltracker.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a CSV import. Valid rows are imported; each rejected row is listed with its line number.
+ */
+public record FuelEntryImportResultDTO(
+        int rowCount,
+        int importedCount,
+        List<RowError> errors
+) {
+    public record RowError(long line, String message) {}
+}
@@ -0,0 +1,13 @@
+package fi.laalo.fueltracker.dto;
+
+import java.util.List;
+
+/**
+ * One page of a vehicle's fuel entries, oldest first.
+ * Pass nextCursor as "after" or previousCursor as "before" to move between pages; null means no more entries that way.
+ */
+public record FuelEntryPageDTO(
+        List<FuelEntryResponseDTO> entries,
+        String nextCursor,
+        String previousCursor
+) {}
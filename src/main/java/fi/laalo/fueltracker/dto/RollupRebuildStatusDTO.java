@@ -0,0 +1,12 @@
+package fi.laalo.fueltracker.dto;
+
+import java.time.Instant;
+
+public record RollupRebuildStatusDTO(
+        String state,
+        int totalUsers,
+        int processedUsers,
+        int failedUsers,
+        Instant startedAt,
+        Instant finishedAt
+) {}
@@ -0,0 +1,8 @@
+package fi.laalo.fueltracker.dto;
+
+public record TokenResponseDTO(
+        String accessToken,
+        String refreshToken,
+        String tokenType,
+        long expiresIn
+) {}
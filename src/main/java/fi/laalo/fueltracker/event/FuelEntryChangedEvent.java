@@ -0,0 +1,13 @@
+package fi.laalo.fueltracker.event;
+
+import java.time.LocalDateTime;
+
+/**
+ * Published when a fuel entry is created, updated or deleted.
+ * changedFrom is the earliest point in the vehicle's history affected by the change.
+ */
+public record FuelEntryChangedEvent(
+        Long userId,
+        Long vehicleId,
+        LocalDateTime changedFrom
+) {}
@@ -0,0 +1,10 @@
+package fi.laalo.fueltracker.event;
+
+/**
+ * Published when a vehicle is created, updated or deleted.
+ */
+public record VehicleChangedEvent(
+        Long userId,
+        Long vehicleId,
+        boolean tankCapacityChanged
+) {}
@@ -0,0 +1,11 @@
+package fi.laalo.fueltracker.exception;
+
+/**
+ * The resource exists but belongs to another user (HTTP 403)
+ */
+public class ForbiddenException extends RuntimeException {
+
+    public ForbiddenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package fi.laalo.fueltracker.exception;
+
+/**
+ * The requested resource does not exist (HTTP 404)
+ */
+public class ResourceNotFoundException extends RuntimeException {
+
+    public ResourceNotFoundException(String message) {
+        super(message);
+    }
+}
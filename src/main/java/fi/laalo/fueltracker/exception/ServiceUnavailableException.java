@@ -0,0 +1,20 @@
+package fi.laalo.fueltracker.exception;
+
+import java.time.Duration;
+
+/**
+ * The server is too busy to handle the request now (HTTP 503); retryAfter goes into the Retry-After header
+ */
+public class ServiceUnavailableException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public ServiceUnavailableException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
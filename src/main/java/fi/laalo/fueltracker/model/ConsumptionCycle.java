@@ -0,0 +1,137 @@
+package fi.laalo.fueltracker.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.LocalDateTime;
+
+/**
+ * Precomputed consumption cycle between two full tanks.
+ * Maintained by ConsumptionCycleService whenever entries or tank capacity change.
+ */
+@Entity
+@Table(name = "consumption_cycles",
+        uniqueConstraints = @UniqueConstraint(name = "uk_consumption_cycles_vehicle_end_entry", columnNames = {"vehicle_id", "end_entry_id"}),
+        indexes = @Index(name = "idx_consumption_cycles_vehicle_to_date", columnList = "vehicle_id, to_date, end_entry_id"))
+public class ConsumptionCycle {
+
+    // Pooled sequence, so a full recalculation inserts its rows in batches instead of one by one
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "consumption_cycles_seq")
+    @SequenceGenerator(name = "consumption_cycles_seq", sequenceName = "consumption_cycles_seq", allocationSize = 50)
+    private Long id;
+
+    // Relation to Vehicle (rows are removed by the database together with the vehicle)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "vehicle_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Vehicle vehicle;
+
+    // Fuel entry that filled the tank at the end of the cycle
+    @Column(name = "end_entry_id", nullable = false)
+    private Long endEntryId;
+
+    @Column(name = "from_odometer", nullable = false)
+    private Double fromOdometer;
+
+    @Column(name = "to_odometer", nullable = false)
+    private Double toOdometer;
+
+    @Column(name = "from_date", nullable = false)
+    private LocalDateTime fromDate;
+
+    @Column(name = "to_date", nullable = false)
+    private LocalDateTime toDate;
+
+    @Column(name = "distance_km", nullable = false)
+    private Double distanceKm;
+
+    @Column(name = "litres", nullable = false)
+    private Double litres;
+
+    @Column(name = "consumption_per_100km", nullable = false)
+    private Double consumptionPer100km;
+
+    // Getters and Setters
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+
+    public void setVehicle(Vehicle vehicle) {
+        this.vehicle = vehicle;
+    }
+
+    public Long getEndEntryId() {
+        return endEntryId;
+    }
+
+    public void setEndEntryId(Long endEntryId) {
+        this.endEntryId = endEntryId;
+    }
+
+    public Double getFromOdometer() {
+        return fromOdometer;
+    }
+
+    public void setFromOdometer(Double fromOdometer) {
+        this.fromOdometer = fromOdometer;
+    }
+
+    public Double getToOdometer() {
+        return toOdometer;
+    }
+
+    public void setToOdometer(Double toOdometer) {
+        this.toOdometer = toOdometer;
+    }
+
+    public LocalDateTime getFromDate() {
+        return fromDate;
+    }
+
+    public void setFromDate(LocalDateTime fromDate) {
+        this.fromDate = fromDate;
+    }
+
+    public LocalDateTime getToDate() {
+        return toDate;
+    }
+
+    public void setToDate(LocalDateTime toDate) {
+        this.toDate = toDate;
+    }
+
+    public Double getDistanceKm() {
+        return distanceKm;
+    }
+
+    public void setDistanceKm(Double distanceKm) {
+        this.distanceKm = distanceKm;
+    }
+
+    public Double getLitres() {
+        return litres;
+    }
+
+    public void setLitres(Double litres) {
+        this.litres = litres;
+    }
+
+    public Double getConsumptionPer100km() {
+        return consumptionPer100km;
+    }
+
+    public void setConsumptionPer100km(Double consumptionPer100km) {
+        this.consumptionPer100km = consumptionPer100km;
+    }
+}
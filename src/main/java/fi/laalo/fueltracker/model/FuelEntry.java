@@ -7,15 +7,18 @@ import java.time.Instant;
 
 
 @Entity
-@Table(name = "fuel_entries")
+@Table(name = "fuel_entries",
+        indexes = @Index(name = "idx_fuel_entries_vehicle_date_id", columnList = "vehicle_id, date_time, id"))
 public class FuelEntry {
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
     
+    // Pooled sequence rather than IDENTITY, so Hibernate can batch inserts (see FuelEntryImportService)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "fuel_entries_seq")
+    @SequenceGenerator(name = "fuel_entries_seq", sequenceName = "fuel_entries_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -55,7 +58,7 @@ public class FuelEntry {
     private Instant updatedAt;
 
     // Relation to Vehicle
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "vehicle_id", nullable = false)
     private Vehicle vehicle;
 
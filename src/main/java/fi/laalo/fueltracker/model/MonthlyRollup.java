@@ -0,0 +1,138 @@
+package fi.laalo.fueltracker.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.time.LocalDate;
+
+/**
+ * Per-vehicle monthly totals behind the monthly statistics endpoints.
+ * Sums are stored instead of averages so rows can be added up across vehicles.
+ */
+@Entity
+@Table(name = "monthly_rollups",
+        uniqueConstraints = @UniqueConstraint(name = "uk_monthly_rollups_vehicle_month", columnNames = {"vehicle_id", "month_start"}),
+        indexes = @Index(name = "idx_monthly_rollups_user_month", columnList = "user_id, month_start"))
+public class MonthlyRollup {
+
+    // Pooled sequence, so a full recalculation inserts its rows in batches instead of one by one
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "monthly_rollups_seq")
+    @SequenceGenerator(name = "monthly_rollups_seq", sequenceName = "monthly_rollups_seq", allocationSize = 50)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private User user;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "vehicle_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Vehicle vehicle;
+
+    // First day of the month
+    @Column(name = "month_start", nullable = false)
+    private LocalDate monthStart;
+
+    @Column(name = "entry_count", nullable = false)
+    private Integer entryCount;
+
+    @Column(name = "total_litres", nullable = false)
+    private Double totalLitres;
+
+    @Column(name = "total_cost", nullable = false)
+    private Double totalCost;
+
+    @Column(name = "price_per_litre_sum", nullable = false)
+    private Double pricePerLitreSum;
+
+    @Column(name = "cycle_count", nullable = false)
+    private Integer cycleCount;
+
+    @Column(name = "consumption_sum", nullable = false)
+    private Double consumptionSum;
+
+    // Getters and Setters
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+
+    public void setVehicle(Vehicle vehicle) {
+        this.vehicle = vehicle;
+    }
+
+    public LocalDate getMonthStart() {
+        return monthStart;
+    }
+
+    public void setMonthStart(LocalDate monthStart) {
+        this.monthStart = monthStart;
+    }
+
+    public Integer getEntryCount() {
+        return entryCount;
+    }
+
+    public void setEntryCount(Integer entryCount) {
+        this.entryCount = entryCount;
+    }
+
+    public Double getTotalLitres() {
+        return totalLitres;
+    }
+
+    public void setTotalLitres(Double totalLitres) {
+        this.totalLitres = totalLitres;
+    }
+
+    public Double getTotalCost() {
+        return totalCost;
+    }
+
+    public void setTotalCost(Double totalCost) {
+        this.totalCost = totalCost;
+    }
+
+    public Double getPricePerLitreSum() {
+        return pricePerLitreSum;
+    }
+
+    public void setPricePerLitreSum(Double pricePerLitreSum) {
+        this.pricePerLitreSum = pricePerLitreSum;
+    }
+
+    public Integer getCycleCount() {
+        return cycleCount;
+    }
+
+    public void setCycleCount(Integer cycleCount) {
+        this.cycleCount = cycleCount;
+    }
+
+    public Double getConsumptionSum() {
+        return consumptionSum;
+    }
+
+    public void setConsumptionSum(Double consumptionSum) {
+        this.consumptionSum = consumptionSum;
+    }
+}
@@ -58,7 +58,7 @@ public class Vehicle {
 
 
     // Relation to User
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
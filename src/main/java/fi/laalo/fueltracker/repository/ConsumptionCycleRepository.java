@@ -0,0 +1,58 @@
+package fi.laalo.fueltracker.repository;
+
+import fi.laalo.fueltracker.model.ConsumptionCycle;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ConsumptionCycleRepository extends JpaRepository<ConsumptionCycle, Long> {
+
+    List<ConsumptionCycle> findByVehicleIdOrderByToDateAscEndEntryIdAsc(Long vehicleId);
+
+    // Last stored full tank strictly before the given time, used as the restart point
+    Optional<ConsumptionCycle> findFirstByVehicleIdAndToDateBeforeOrderByToDateDescEndEntryIdDesc(Long vehicleId, LocalDateTime before);
+
+    // Cycles per month of the closing full tank, from the given time on (null = whole history)
+    @Query(value = "SELECT CAST(c.month_start AS date) AS monthStart, COUNT(*) AS cycleCount, " +
+                   "SUM(c.consumption_per_100km) AS consumptionSum " +
+                   "FROM (SELECT date_trunc('month', cc.to_date) AS month_start, cc.consumption_per_100km " +
+                   "FROM consumption_cycles cc WHERE cc.vehicle_id = :vehicleId " +
+                   "AND (CAST(:from AS timestamp) IS NULL OR cc.to_date >= CAST(:from AS timestamp))) c " +
+                   "GROUP BY c.month_start " +
+                   "ORDER BY monthStart",
+           nativeQuery = true)
+    List<MonthlyCycleTotals> sumByMonth(@Param("vehicleId") Long vehicleId, @Param("from") LocalDateTime from);
+
+    @Query("SELECT AVG(c.consumptionPer100km) FROM ConsumptionCycle c WHERE c.vehicle.id = :vehicleId")
+    Double findAverageConsumptionByVehicleId(@Param("vehicleId") Long vehicleId);
+
+    @Modifying
+    @Query("DELETE FROM ConsumptionCycle c WHERE c.vehicle.id = :vehicleId")
+    void deleteByVehicleId(@Param("vehicleId") Long vehicleId);
+
+    @Modifying
+    @Query("DELETE FROM ConsumptionCycle c WHERE c.vehicle.id = :vehicleId AND (c.toDate > :toDate OR (c.toDate = :toDate AND c.endEntryId > :endEntryId))")
+    void deleteByVehicleIdAfter(@Param("vehicleId") Long vehicleId,
+                                @Param("toDate") LocalDateTime toDate,
+                                @Param("endEntryId") Long endEntryId);
+
+    // Vehicles that have enough entries for cycles but nothing stored yet (e.g. data from before this table existed)
+    @Query("SELECT v.id FROM Vehicle v WHERE v.tankCapacityLiters > 0 " +
+           "AND NOT EXISTS (SELECT c.id FROM ConsumptionCycle c WHERE c.vehicle = v) " +
+           "AND (SELECT COUNT(f) FROM FuelEntry f WHERE f.vehicle = v) > 1")
+    List<Long> findVehicleIdsWithoutCycles();
+
+    interface MonthlyCycleTotals {
+        LocalDate getMonthStart();
+        Long getCycleCount();
+        Double getConsumptionSum();
+    }
+}
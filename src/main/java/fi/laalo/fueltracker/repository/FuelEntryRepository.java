@@ -1,22 +1,181 @@
 package fi.laalo.fueltracker.repository;
 
+import fi.laalo.fueltracker.dto.FuelEntryResponseDTO;
 import fi.laalo.fueltracker.model.FuelEntry;
 import fi.laalo.fueltracker.model.Vehicle;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface FuelEntryRepository extends JpaRepository<FuelEntry, Long> {
 
+    // Entity reads fetch no associations: both are lazy, and the callers only read their ids,
+    // which come from the entry's own FK columns. Read endpoints select DTOs instead.
     List<FuelEntry> findByUserId(Long userId);
+
+    // Ownership checks: one lookup on (id, user_id) instead of loading the entry and its user
+    Optional<FuelEntry> findByIdAndUserId(Long id, Long userId);
+
+    boolean existsByIdAndUserId(Long id, Long userId);
+
+    @Query("SELECT f.vehicle.id FROM FuelEntry f WHERE f.id = :id AND f.user.id = :userId")
+    Optional<Long> findVehicleIdByIdAndUserId(@Param("id") Long id, @Param("userId") Long userId);
+
     List<FuelEntry> findByVehicle(Vehicle vehicle);
-    List<FuelEntry> findByVehicleOrderByDateTimeAsc(Vehicle vehicle);
-    
+
+    List<FuelEntry> findByVehicleIdOrderByDateTimeAscIdAsc(Long vehicleId);
+
+    // What the cycle calculation reads of the vehicle's entries, in (dateTime, id) order, as
+    // scalars: no entities are hydrated, managed or snapshotted for a pass over the history
+    @Query("SELECT new fi.laalo.fueltracker.repository.FuelEntryRepository$CycleInput(f.id, f.dateTime, f.odometer, f.litres) " +
+           "FROM FuelEntry f WHERE f.vehicle.id = :vehicleId ORDER BY f.dateTime ASC, f.id ASC")
+    List<CycleInput> findCycleInputs(@Param("vehicleId") Long vehicleId);
+
+    // Same, after the given (dateTime, id) position in the vehicle's history
+    @Query("SELECT new fi.laalo.fueltracker.repository.FuelEntryRepository$CycleInput(f.id, f.dateTime, f.odometer, f.litres) " +
+           "FROM FuelEntry f WHERE f.vehicle.id = :vehicleId AND f.dateTime >= :dateTime AND (f.dateTime > :dateTime OR f.id > :id) " +
+           "ORDER BY f.dateTime ASC, f.id ASC")
+    List<CycleInput> findCycleInputsAfter(@Param("vehicleId") Long vehicleId,
+                                          @Param("dateTime") LocalDateTime dateTime,
+                                          @Param("id") Long id);
+
+    // Read-only listings select straight into the response DTO, so no entities are managed or snapshotted
+    @Query("SELECT new fi.laalo.fueltracker.dto.FuelEntryResponseDTO(f.id, f.vehicle.id, f.litres, f.odometer, " +
+           "f.pricePerLitre, f.totalPrice, f.dateTime, f.location, f.notes) FROM FuelEntry f WHERE f.vehicle.id = :vehicleId ORDER BY f.dateTime ASC, f.id ASC")
+    List<FuelEntryResponseDTO> findDtosByVehicleId(@Param("vehicleId") Long vehicleId);
+
+    @Query("SELECT new fi.laalo.fueltracker.dto.FuelEntryResponseDTO(f.id, f.vehicle.id, f.litres, f.odometer, " +
+           "f.pricePerLitre, f.totalPrice, f.dateTime, f.location, f.notes) FROM FuelEntry f WHERE f.id = :id AND f.user.id = :userId")
+    Optional<FuelEntryResponseDTO> findDtoByIdAndUserId(@Param("id") Long id, @Param("userId") Long userId);
+
+    String PAGE_SELECT = "SELECT new fi.laalo.fueltracker.dto.FuelEntryResponseDTO(f.id, f.vehicle.id, f.litres, f.odometer, " +
+                         "f.pricePerLitre, f.totalPrice, f.dateTime, f.location, f.notes) FROM FuelEntry f WHERE f.vehicle.id = :vehicleId ";
+
+    // Keyset pages over (dateTime, id). Each combination of cursor and range has a query of its own
+    // whose conditions are all index range bounds on (vehicle_id, date_time, id): the cursor is
+    // "dateTime >= d AND (dateTime > d OR id > i)" rather than an OR over the whole row, and there
+    // are no "param IS NULL OR ..." guards, which the planner cannot turn into a range scan.
+    @Query(PAGE_SELECT + "ORDER BY f.dateTime ASC, f.id ASC")
+    List<FuelEntryResponseDTO> findFirstPage(@Param("vehicleId") Long vehicleId, Limit limit);
+
+    @Query(PAGE_SELECT + "AND f.dateTime >= :afterDate AND (f.dateTime > :afterDate OR f.id > :afterId) " +
+           "ORDER BY f.dateTime ASC, f.id ASC")
+    List<FuelEntryResponseDTO> findPageAfter(@Param("vehicleId") Long vehicleId,
+                                             @Param("afterDate") LocalDateTime afterDate,
+                                             @Param("afterId") Long afterId,
+                                             Limit limit);
+
+    @Query(PAGE_SELECT + "AND f.dateTime <= :beforeDate AND (f.dateTime < :beforeDate OR f.id < :beforeId) " +
+           "ORDER BY f.dateTime DESC, f.id DESC")
+    List<FuelEntryResponseDTO> findPageBefore(@Param("vehicleId") Long vehicleId,
+                                              @Param("beforeDate") LocalDateTime beforeDate,
+                                              @Param("beforeId") Long beforeId,
+                                              Limit limit);
+
+    // Same within [from, to); both bounds are required
+    @Query(PAGE_SELECT + "AND f.dateTime >= :from AND f.dateTime < :to ORDER BY f.dateTime ASC, f.id ASC")
+    List<FuelEntryResponseDTO> findFirstPageInRange(@Param("vehicleId") Long vehicleId,
+                                                    @Param("from") LocalDateTime from,
+                                                    @Param("to") LocalDateTime to,
+                                                    Limit limit);
+
+    @Query(PAGE_SELECT + "AND f.dateTime >= :from AND f.dateTime < :to " +
+           "AND f.dateTime >= :afterDate AND (f.dateTime > :afterDate OR f.id > :afterId) " +
+           "ORDER BY f.dateTime ASC, f.id ASC")
+    List<FuelEntryResponseDTO> findPageAfterInRange(@Param("vehicleId") Long vehicleId,
+                                                    @Param("from") LocalDateTime from,
+                                                    @Param("to") LocalDateTime to,
+                                                    @Param("afterDate") LocalDateTime afterDate,
+                                                    @Param("afterId") Long afterId,
+                                                    Limit limit);
+
+    @Query(PAGE_SELECT + "AND f.dateTime >= :from AND f.dateTime < :to " +
+           "AND f.dateTime <= :beforeDate AND (f.dateTime < :beforeDate OR f.id < :beforeId) " +
+           "ORDER BY f.dateTime DESC, f.id DESC")
+    List<FuelEntryResponseDTO> findPageBeforeInRange(@Param("vehicleId") Long vehicleId,
+                                                     @Param("from") LocalDateTime from,
+                                                     @Param("to") LocalDateTime to,
+                                                     @Param("beforeDate") LocalDateTime beforeDate,
+                                                     @Param("beforeId") Long beforeId,
+                                                     Limit limit);
+
+    /**
+     * Monthly totals of the vehicle's valid entries from the given time on (null = whole history),
+     * aggregated in the database so only one row per month is returned.
+     * Every month with entries gets a row, with zero totals when none of them is valid.
+     * An entry is valid when its odometer is not below any earlier reading in (dateTime, id) order.
+     * Rows without an odometer (left by older schemas) are never valid, as in ConsumptionCalculator;
+     * MAX ignores them, so they do not affect the validity of the others either.
+     */
+    @Query(value = "SELECT CAST(v.month_start AS date) AS monthStart, SUM(v.valid) AS entryCount, " +
+                   "SUM(v.valid * v.litres) AS totalLitres, SUM(v.valid * v.total_price) AS totalCost, " +
+                   "SUM(v.valid * v.price_per_litre) AS pricePerLitreSum " +
+                   "FROM (SELECT e.month_start, e.date_time, e.litres, e.total_price, e.price_per_litre, " +
+                   "CASE WHEN e.odometer IS NOT NULL AND (e.previous_max IS NULL OR e.odometer >= e.previous_max) THEN 1 ELSE 0 END AS valid " +
+                   "FROM (SELECT date_trunc('month', f.date_time) AS month_start, f.date_time, f.litres, f.total_price, f.price_per_litre, f.odometer, " +
+                   "MAX(f.odometer) OVER (ORDER BY f.date_time, f.id ROWS BETWEEN UNBOUNDED PRECEDING AND 1 PRECEDING) AS previous_max " +
+                   "FROM fuel_entries f WHERE f.vehicle_id = :vehicleId) e) v " +
+                   "WHERE CAST(:from AS timestamp) IS NULL OR v.date_time >= CAST(:from AS timestamp) " +
+                   "GROUP BY v.month_start " +
+                   "ORDER BY monthStart",
+           nativeQuery = true)
+    List<MonthlyEntryTotals> sumValidEntriesByMonth(@Param("vehicleId") Long vehicleId, @Param("from") LocalDateTime from);
+
+    /**
+     * Tank capacity cycles of the vehicle computed in the database, ending after the given
+     * (dateTime, id) position (null = whole history). Same result as ConsumptionCalculator:
+     * the first valid entry that brings the litres added so far up to the tank capacity
+     * fills the tank, and from then on every valid entry refills it, so each later entry
+     * closes a cycle with its own litres over the distance from the previous valid entry.
+     */
+    @Query(value = "SELECT v.previous_odometer AS fromOdometer, v.odometer AS toOdometer, " +
+                   "v.previous_date_time AS fromDate, v.date_time AS toDate, " +
+                   "v.odometer - v.previous_odometer AS distance, v.litres AS fuelConsumed, " +
+                   "(v.litres / (v.odometer - v.previous_odometer)) * 100 AS consumption, v.id AS endEntryId " +
+                   "FROM (SELECT e.id, e.date_time, e.odometer, e.litres, " +
+                   "LAG(e.odometer) OVER (ORDER BY e.date_time, e.id) AS previous_odometer, " +
+                   "LAG(e.date_time) OVER (ORDER BY e.date_time, e.id) AS previous_date_time, " +
+                   "SUM(e.litres) OVER (ORDER BY e.date_time, e.id ROWS BETWEEN UNBOUNDED PRECEDING AND 1 PRECEDING) AS litres_before " +
+                   "FROM (SELECT f.id, f.date_time, f.odometer, f.litres, " +
+                   "MAX(f.odometer) OVER (ORDER BY f.date_time, f.id ROWS BETWEEN UNBOUNDED PRECEDING AND 1 PRECEDING) AS previous_max " +
+                   "FROM fuel_entries f WHERE f.vehicle_id = :vehicleId AND f.odometer IS NOT NULL) e " +
+                   "WHERE e.previous_max IS NULL OR e.odometer >= e.previous_max) v " +
+                   "WHERE v.litres_before >= :tankCapacity AND v.litres > 0 AND v.odometer > v.previous_odometer " +
+                   "AND (CAST(:afterDate AS timestamp) IS NULL OR v.date_time > CAST(:afterDate AS timestamp) " +
+                   "OR (v.date_time = CAST(:afterDate AS timestamp) AND v.id > :afterId)) " +
+                   "ORDER BY v.date_time, v.id",
+           nativeQuery = true)
+    List<CycleRow> calculateCycles(@Param("vehicleId") Long vehicleId,
+                                   @Param("tankCapacity") double tankCapacity,
+                                   @Param("afterDate") LocalDateTime afterDate,
+                                   @Param("afterId") Long afterId);
+
+    // Odometer of the vehicle's latest entry in (dateTime, id) order; a backward scan of idx_fuel_entries_vehicle_date_id.
+    // Rows without an odometer (left by older schemas) are skipped: a null element cannot be returned from findFirst()
+    @Query("SELECT f.odometer FROM FuelEntry f WHERE f.vehicle.id = :vehicleId AND f.odometer IS NOT NULL " +
+           "ORDER BY f.dateTime DESC, f.id DESC")
+    List<Double> findLatestOdometers(@Param("vehicleId") Long vehicleId, Limit limit);
+
+    // Same, ignoring one entry (the one being updated)
+    @Query("SELECT f.odometer FROM FuelEntry f WHERE f.vehicle.id = :vehicleId AND f.id <> :excludedId " +
+           "AND f.odometer IS NOT NULL ORDER BY f.dateTime DESC, f.id DESC")
+    List<Double> findLatestOdometersExcluding(@Param("vehicleId") Long vehicleId,
+                                              @Param("excludedId") Long excludedId,
+                                              Limit limit);
+
+    // (dateTime, odometer) of the vehicle's entries in history order, for resolving trip distances on import
+    @Query("SELECT f.dateTime AS dateTime, f.odometer AS odometer FROM FuelEntry f " +
+           "WHERE f.vehicle.id = :vehicleId ORDER BY f.dateTime, f.id")
+    List<OdometerReading> findOdometerReadings(@Param("vehicleId") Long vehicleId);
+
     @Query("SELECT f FROM FuelEntry f WHERE f.vehicle = :vehicle AND f.dateTime >= :startDate AND f.dateTime < :endDate ORDER BY f.dateTime ASC")
     List<FuelEntry> findByVehicleAndDateRange(@Param("vehicle") Vehicle vehicle, 
                                                @Param("startDate") LocalDateTime startDate, 
@@ -27,4 +186,30 @@ public interface FuelEntryRepository extends JpaRepository<FuelEntry, Long> {
                                               @Param("startDate") LocalDateTime startDate, 
                                               @Param("endDate") LocalDateTime endDate);
         
+
+    record CycleInput(Long id, LocalDateTime dateTime, Double odometer, Double litres) {}
+
+    interface OdometerReading {
+        LocalDateTime getDateTime();
+        Double getOdometer();
+    }
+
+    interface CycleRow {
+        Double getFromOdometer();
+        Double getToOdometer();
+        LocalDateTime getFromDate();
+        LocalDateTime getToDate();
+        Double getDistance();
+        Double getFuelConsumed();
+        Double getConsumption();
+        Long getEndEntryId();
+    }
+
+    interface MonthlyEntryTotals {
+        LocalDate getMonthStart();
+        Long getEntryCount();
+        Double getTotalLitres();
+        Double getTotalCost();
+        Double getPricePerLitreSum();
+    }
 }
@@ -0,0 +1,51 @@
+package fi.laalo.fueltracker.repository;
+
+import fi.laalo.fueltracker.model.MonthlyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface MonthlyRollupRepository extends JpaRepository<MonthlyRollup, Long> {
+
+    // All vehicles of the user added up per month
+    @Query("SELECT r.monthStart AS monthStart, SUM(r.entryCount) AS entryCount, SUM(r.totalLitres) AS totalLitres, " +
+           "SUM(r.totalCost) AS totalCost, SUM(r.pricePerLitreSum) AS pricePerLitreSum, " +
+           "SUM(r.cycleCount) AS cycleCount, SUM(r.consumptionSum) AS consumptionSum " +
+           "FROM MonthlyRollup r WHERE r.user.id = :userId GROUP BY r.monthStart")
+    List<MonthlyTotals> sumByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT r.monthStart AS monthStart, SUM(r.entryCount) AS entryCount, SUM(r.totalLitres) AS totalLitres, " +
+           "SUM(r.totalCost) AS totalCost, SUM(r.pricePerLitreSum) AS pricePerLitreSum, " +
+           "SUM(r.cycleCount) AS cycleCount, SUM(r.consumptionSum) AS consumptionSum " +
+           "FROM MonthlyRollup r WHERE r.user.id = :userId AND r.monthStart = :monthStart GROUP BY r.monthStart")
+    Optional<MonthlyTotals> sumByUserIdAndMonth(@Param("userId") Long userId, @Param("monthStart") LocalDate monthStart);
+
+    @Modifying
+    @Query("DELETE FROM MonthlyRollup r WHERE r.vehicle.id = :vehicleId")
+    void deleteByVehicleId(@Param("vehicleId") Long vehicleId);
+
+    @Modifying
+    @Query("DELETE FROM MonthlyRollup r WHERE r.vehicle.id = :vehicleId AND r.monthStart >= :fromMonth")
+    void deleteByVehicleIdFrom(@Param("vehicleId") Long vehicleId, @Param("fromMonth") LocalDate fromMonth);
+
+    @Modifying
+    @Query("DELETE FROM MonthlyRollup r WHERE r.user.id = :userId")
+    void deleteByUserId(@Param("userId") Long userId);
+
+    interface MonthlyTotals {
+        LocalDate getMonthStart();
+        Long getEntryCount();
+        Double getTotalLitres();
+        Double getTotalCost();
+        Double getPricePerLitreSum();
+        Long getCycleCount();
+        Double getConsumptionSum();
+    }
+}
@@ -1,19 +1,41 @@
 package fi.laalo.fueltracker.repository;
 
 
+import fi.laalo.fueltracker.dto.VehicleResponseDTO;
 import fi.laalo.fueltracker.model.Vehicle;
 import fi.laalo.fueltracker.model.User;
 
 import java.util.List;
+import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 
 @Repository
 public interface VehicleRepository extends JpaRepository<Vehicle, Long> {
     List<Vehicle> findByUser(User user);
+
     List<Vehicle> findByUserId(Long userId);
+
+    // Ownership checks: one lookup on (id, user_id) instead of loading the vehicle and its user
+    Optional<Vehicle> findByIdAndUserId(Long id, Long userId);
+
+    boolean existsByIdAndUserId(Long id, Long userId);
+
+    // Read-only endpoints select straight into the response DTO
+    @Query("SELECT new fi.laalo.fueltracker.dto.VehicleResponseDTO(v.id, v.make, v.model, v.fuelType, " +
+           "v.manufacturingYear, v.licensePlate, v.initialOdometer, v.tankCapacityLiters) FROM Vehicle v WHERE v.user.id = :userId")
+    List<VehicleResponseDTO> findDtosByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT new fi.laalo.fueltracker.dto.VehicleResponseDTO(v.id, v.make, v.model, v.fuelType, " +
+           "v.manufacturingYear, v.licensePlate, v.initialOdometer, v.tankCapacityLiters) FROM Vehicle v WHERE v.id = :id AND v.user.id = :userId")
+    Optional<VehicleResponseDTO> findDtoByIdAndUserId(@Param("id") Long id, @Param("userId") Long userId);
+
+    @Query("SELECT v.id FROM Vehicle v WHERE v.user.id = :userId")
+    List<Long> findIdsByUserId(@Param("userId") Long userId);
     
     boolean existsByLicensePlate(String licensePlate);
 
@@ -0,0 +1,192 @@
+package fi.laalo.fueltracker.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fi.laalo.fueltracker.event.FuelEntryChangedEvent;
+import fi.laalo.fueltracker.event.VehicleChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded in-process cache for analytics results.
+ * Keys carry the data version of the vehicle or user they were computed from, and
+ * every write bumps that version, so a result computed before a write can never be
+ * returned after it. The version is bumped when the change is published and again
+ * after commit, which also covers reads that ran while the writing transaction was open.
+ * Results under an old version are not removed, they are just never asked for again and
+ * leave with size or TTL eviction. A version is forgotten once it has not been read or
+ * bumped for twice the TTL; every result computed under it has expired by then, so
+ * starting that vehicle or user again from version 0 cannot bring one back.
+ * Results are handed out as futures. Concurrent misses on the same key share one computation
+ * (single flight): the first caller starts it, the others get its future instead of starting
+ * or waiting on their own. Because the key carries the version, a request that starts after a
+ * write never joins a computation that began before it.
+ */
+@Component
+public class AnalyticsCache {
+
+    private final Cache<Key, Object> cache;
+    private final Map<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final Cache<Long, AtomicLong> vehicleVersions;
+    private final Cache<Long, AtomicLong> userVersions;
+    // Bumped by a full flush, so results computed before it are unreachable too
+    private final AtomicLong epoch = new AtomicLong();
+
+    public AnalyticsCache(MeterRegistry meterRegistry,
+                          @Value("${fueltracker.analytics.cache.max-size:10000}") long maxSize,
+                          @Value("${fueltracker.analytics.cache.ttl:10m}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "analytics");
+        this.vehicleVersions = Caffeine.newBuilder().expireAfterAccess(ttl.multipliedBy(2)).build();
+        this.userVersions = Caffeine.newBuilder().expireAfterAccess(ttl.multipliedBy(2)).build();
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("fueltracker.analytics.inflight", inFlight, Map::size)
+                .description("Analytics computations currently running")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Result for one vehicle; on a miss the loader starts the computation, e.g. on the AnalyticsExecutor
+     */
+    public <T> CompletableFuture<T> forVehicle(String kind, Long vehicleId, Supplier<CompletableFuture<T>> loader) {
+        return get(new Key(Scope.VEHICLE, vehicleId, kind, null, epoch.get(), version(vehicleVersions, vehicleId)), loader);
+    }
+
+    /**
+     * Result for one user; argument distinguishes variants such as the month
+     */
+    public <T> CompletableFuture<T> forUser(String kind, Long userId, Object argument, Supplier<CompletableFuture<T>> loader) {
+        return get(new Key(Scope.USER, userId, kind, argument, epoch.get(), version(userVersions, userId)), loader);
+    }
+
+    // Coalescing happens before anything is started, so a follower gets the running computation's
+    // future and never takes a worker of its own. Every caller gets a copy, so one caller
+    // cancelling or timing out its future does not affect the others.
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> get(Key key, Supplier<CompletableFuture<T>> loader) {
+        T value = (T) cache.getIfPresent(key);
+        if (value != null) {
+            return CompletableFuture.completedFuture(value);
+        }
+
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            coalesced(key.kind()).increment();
+            return (CompletableFuture<T>) running.copy();
+        }
+
+        // The previous flight may have finished between the cache check and putIfAbsent;
+        // read through the map view so this check is not counted as a second miss
+        value = (T) cache.asMap().get(key);
+        if (value != null) {
+            inFlight.remove(key, flight);
+            flight.complete(value);
+            return CompletableFuture.completedFuture(value);
+        }
+
+        CompletableFuture<T> started;
+        try {
+            started = loader.get();
+        } catch (RuntimeException | Error e) {
+            // E.g. the executor rejected the work; followers that joined meanwhile see the same
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        started.whenComplete((result, failure) -> {
+            // Cached before the flight is removed, so a caller arriving in between finds the result
+            if (failure == null) {
+                cache.put(key, result);
+            }
+            inFlight.remove(key, flight);
+            if (failure == null) {
+                flight.complete(result);
+            } else {
+                flight.completeExceptionally(failure);
+            }
+        });
+        return (CompletableFuture<T>) flight.copy();
+    }
+
+    private Counter coalesced(String kind) {
+        return Counter.builder("fueltracker.analytics.coalesced")
+                .description("Requests that waited for a computation already running instead of starting their own")
+                .tag("kind", kind)
+                .register(meterRegistry);
+    }
+
+    @EventListener
+    public void onFuelEntryChanged(FuelEntryChangedEvent event) {
+        invalidate(event.vehicleId(), event.userId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void afterFuelEntryCommitted(FuelEntryChangedEvent event) {
+        invalidate(event.vehicleId(), event.userId());
+    }
+
+    @EventListener
+    public void onVehicleChanged(VehicleChangedEvent event) {
+        invalidate(event.vehicleId(), event.userId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void afterVehicleCommitted(VehicleChangedEvent event) {
+        invalidate(event.vehicleId(), event.userId());
+    }
+
+    /**
+     * For writes that do not go through the change events, e.g. a rollup rebuild
+     */
+    public void invalidateUser(Long userId) {
+        invalidate(null, userId);
+    }
+
+    /**
+     * Drop everything, e.g. when change notifications from other nodes may have been missed
+     */
+    public void invalidateAll() {
+        epoch.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Drop results of the vehicle and the user; either may be null
+     */
+    public void invalidate(Long vehicleId, Long userId) {
+        if (vehicleId != null) {
+            vehicleVersions.get(vehicleId, id -> new AtomicLong()).incrementAndGet();
+        }
+        if (userId != null) {
+            userVersions.get(userId, id -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    private static long version(Cache<Long, AtomicLong> versions, Long id) {
+        AtomicLong version = versions.getIfPresent(id);
+        return version != null ? version.get() : 0L;
+    }
+
+    private enum Scope { VEHICLE, USER }
+
+    private record Key(Scope scope, Long scopeId, String kind, Object argument, long epoch, long version) {}
+}
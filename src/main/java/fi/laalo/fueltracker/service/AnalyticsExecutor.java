@@ -0,0 +1,127 @@
+package fi.laalo.fueltracker.service;
+
+import fi.laalo.fueltracker.config.SqlStatementCounter;
+import fi.laalo.fueltracker.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs analytics computations off the request threads, on a fixed pool with a bounded queue.
+ * A full queue rejects the request straight away, and a result not ready within the deadline
+ * is given up on; both answer 503 with Retry-After. At the deadline the work is cancelled: taken
+ * off the queue if it has not started, interrupted if it has, so a worker is not kept busy for a
+ * request that already failed. Time spent queued and computing is recorded separately per operation
+ * (fueltracker.analytics.queue.wait / fueltracker.analytics.compute).
+ */
+@Component
+public class AnalyticsExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final MeterRegistry meterRegistry;
+    private final Duration deadline;
+    private final Duration retryAfter;
+
+    public AnalyticsExecutor(MeterRegistry meterRegistry,
+                             @Value("${fueltracker.analytics.executor.threads:4}") int threads,
+                             @Value("${fueltracker.analytics.executor.queue-capacity:50}") int queueCapacity,
+                             @Value("${fueltracker.analytics.executor.deadline:10s}") Duration deadline,
+                             @Value("${fueltracker.analytics.executor.retry-after:5s}") Duration retryAfter) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("analytics-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.meterRegistry = meterRegistry;
+        this.deadline = deadline;
+        this.retryAfter = retryAfter;
+        // Pool size, active threads and queue depth
+        ExecutorServiceMetrics.monitor(meterRegistry, executor, "analytics");
+    }
+
+    /**
+     * Start the computation; the future fails with ServiceUnavailableException when the deadline passes
+     */
+    public <T> CompletableFuture<T> submit(String operation, Supplier<T> work) {
+        return submit(operation, null, work);
+    }
+
+    /**
+     * Same, recording queue wait, compute time and the stages of the work into timing (may be null)
+     */
+    public <T> CompletableFuture<T> submit(String operation, ServerTiming timing, Supplier<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // Statements run on the worker count towards the request that submitted the work
+        AtomicInteger statements = SqlStatementCounter.current();
+        long enqueued = System.nanoTime();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                long started = System.nanoTime();
+                timer("fueltracker.analytics.queue.wait", operation).record(started - enqueued, TimeUnit.NANOSECONDS);
+                if (result.isDone()) {
+                    return; // Deadline passed while queued; nobody is waiting for this anymore
+                }
+                try {
+                    Supplier<T> counted = statements != null ? () -> SqlStatementCounter.bind(statements, work) : work;
+                    T value = timing != null ? timing.bind(counted) : counted.get();
+                    long computed = System.nanoTime() - started;
+                    timer("fueltracker.analytics.compute", operation).record(computed, TimeUnit.NANOSECONDS);
+                    if (timing != null) {
+                        timing.add("queue", started - enqueued, null);
+                        timing.add("compute", computed, null);
+                    }
+                    result.complete(value);
+                } catch (RuntimeException | Error e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected(operation, "saturated").increment();
+            throw new ServiceUnavailableException("Analytics are busy, please try again shortly", retryAfter);
+        }
+
+        return result.orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof TimeoutException) {
+                // Interrupt the computation, or free its queue slot if it has not started
+                task.cancel(true);
+                executor.remove((Runnable) task);
+                rejected(operation, "deadline").increment();
+                throw new ServiceUnavailableException("Analytics took too long, please try again shortly", retryAfter);
+            }
+            throw cause instanceof RuntimeException runtime ? runtime : new CompletionException(cause);
+        });
+    }
+
+    private Timer timer(String name, String operation) {
+        return Timer.builder(name).tag("operation", operation).register(meterRegistry);
+    }
+
+    private Counter rejected(String operation, String reason) {
+        return Counter.builder("fueltracker.analytics.rejected")
+                .tag("operation", operation)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,62 @@
+package fi.laalo.fueltracker.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Times the stages of analytics reads and recalculations (fetch, validate, aggregate, ...)
+ * as fueltracker.analytics.stage, tagged with operation and stage, and the rows each stage
+ * handled as fueltracker.analytics.stage.rows. Stages are also added to the request's
+ * ServerTiming when one is bound.
+ */
+@Component
+public class AnalyticsStages {
+
+    private final MeterRegistry meterRegistry;
+
+    public AnalyticsStages(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> T time(String operation, String stage, Supplier<T> work) {
+        return time(operation, stage, work, null);
+    }
+
+    /**
+     * Time the work and record the rows of its result
+     */
+    public <T> T time(String operation, String stage, Supplier<T> work, ToIntFunction<? super T> rows) {
+        long started = System.nanoTime();
+        T result = work.get();
+        long elapsed = System.nanoTime() - started;
+
+        Timer.builder("fueltracker.analytics.stage")
+                .tag("operation", operation)
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+
+        Integer rowCount = null;
+        if (rows != null) {
+            rowCount = rows.applyAsInt(result);
+            DistributionSummary.builder("fueltracker.analytics.stage.rows")
+                    .tag("operation", operation)
+                    .tag("stage", stage)
+                    .register(meterRegistry)
+                    .record(rowCount);
+        }
+
+        ServerTiming timing = ServerTiming.current();
+        if (timing != null) {
+            timing.add(stage, elapsed, rowCount);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,182 @@
+package fi.laalo.fueltracker.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.laalo.fueltracker.event.FuelEntryChangedEvent;
+import fi.laalo.fueltracker.event.VehicleChangedEvent;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+/**
+ * Keeps the analytics caches of all nodes coherent through PostgreSQL LISTEN/NOTIFY.
+ * Changes are sent with pg_notify inside the writing transaction, so other nodes only
+ * hear about them once they are committed, in commit order, and never about a rolled back
+ * change. Every node listens on its own connection and evicts the affected vehicle and user;
+ * evictions do not depend on each other, so the order they arrive in does not matter.
+ * A listening session receives every committed notification, so they can only be missed
+ * while the listener connection is down: it is checked when idle, and after reconnecting
+ * the whole cache is flushed.
+ */
+@Component
+@ConditionalOnProperty(name = "fueltracker.cache.coherence.enabled", havingValue = "true")
+public class CacheCoherenceChannel {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheCoherenceChannel.class);
+    private static final String CHANNEL = "fueltracker_changes";
+    private static final long MAX_RECONNECT_DELAY_MS = 30_000;
+
+    private final AnalyticsCache analyticsCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSourceProperties;
+    private final ObjectMapper objectMapper;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Value("${fueltracker.cache.coherence.poll-timeout-ms:10000}")
+    private int pollTimeoutMs;
+
+    private volatile boolean running;
+    private volatile Connection listenConnection;
+    private Thread listenerThread;
+
+    public CacheCoherenceChannel(AnalyticsCache analyticsCache,
+                                 JdbcTemplate jdbcTemplate,
+                                 DataSourceProperties dataSourceProperties,
+                                 ObjectMapper objectMapper) {
+        this.analyticsCache = analyticsCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSourceProperties = dataSourceProperties;
+        this.objectMapper = objectMapper;
+    }
+
+    @EventListener
+    public void onFuelEntryChanged(FuelEntryChangedEvent event) {
+        publish(event.userId(), event.vehicleId());
+    }
+
+    @EventListener
+    public void onVehicleChanged(VehicleChangedEvent event) {
+        publish(event.userId(), event.vehicleId());
+    }
+
+    private void publish(Long userId, Long vehicleId) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(
+                    new ChangeNotification(nodeId, userId, vehicleId));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize change notification", e);
+        }
+        // Joins the surrounding transaction, so the notification is only delivered on commit
+        // and is dropped on rollback
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> null, CHANNEL, payload);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        listenerThread = new Thread(this::listen, "cache-coherence-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+        closeQuietly(listenConnection);
+    }
+
+    private void listen() {
+        long reconnectDelay = 1000;
+        boolean connectedBefore = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                listenConnection = connection;
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                if (connectedBefore) {
+                    // Anything sent while we were disconnected is lost
+                    log.info("Cache coherence listener reconnected, flushing analytics cache");
+                    analyticsCache.invalidateAll();
+                }
+                connectedBefore = true;
+                reconnectDelay = 1000;
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollTimeoutMs);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            handle(notification.getParameter());
+                        }
+                    } else if (!connection.isValid(5)) {
+                        throw new SQLException("Listener connection is no longer valid");
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Cache coherence listener lost its connection, retrying in {} ms", reconnectDelay, e);
+                try {
+                    Thread.sleep(reconnectDelay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MS);
+            } finally {
+                listenConnection = null;
+            }
+        }
+    }
+
+    // Apply one notification payload from the channel
+    public void handle(String payload) {
+        ChangeNotification change;
+        try {
+            change = objectMapper.readValue(payload, ChangeNotification.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring malformed change notification: {}", payload);
+            return;
+        }
+        if (nodeId.equals(change.node())) {
+            return; // Already invalidated locally
+        }
+        analyticsCache.invalidate(change.vehicleId(), change.userId());
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // Shutting down anyway
+        }
+    }
+
+    public record ChangeNotification(String node, Long userId, Long vehicleId) {}
+}
@@ -0,0 +1,153 @@
+package fi.laalo.fueltracker.service;
+
+import fi.laalo.fueltracker.model.FuelEntry;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tank capacity consumption calculation.
+ * Shared by the analytics reads and the persisted cycle table, which resumes
+ * the calculation from the last stored full tank instead of the start of history.
+ */
+public final class ConsumptionCalculator {
+
+    private ConsumptionCalculator() {}
+
+    /**
+     * Filter and validate fuel entries:
+     * 1. Sort by date ascending (ties by id)
+     * 2. Remove entries where odometer < previous odometer (invalid data)
+     * 3. Skip entries with missing odometers
+     */
+    public static List<FuelEntry> getValidEntries(List<FuelEntry> entries) {
+        return getValidEntries(entries, null);
+    }
+
+    /**
+     * Same as {@link #getValidEntries(List)} but continuing after an already validated
+     * entry with the given odometer (null when starting from the beginning of history).
+     * The validation itself is {@link VehicleSeries#retainValid(Double)}.
+     */
+    public static List<FuelEntry> getValidEntries(List<FuelEntry> entries, Double lastValidOdometer) {
+        return VehicleSeries.of(entries).retainValid(lastValidOdometer).entries();
+    }
+
+    /**
+     * Calculate consumption cycles using tank capacity logic
+     * Core rule: Tank cannot physically contain more than tankCapacityLiters
+     * remainingFuel must NEVER exceed tankCapacity
+     */
+    public static List<Cycle> calculateCycles(List<FuelEntry> validEntries, Double tankCapacityLiters) {
+        return calculateCycles(VehicleSeries.of(validEntries), tankCapacityLiters, null);
+    }
+
+    /**
+     * Calculate consumption cycles starting from a known full tank.
+     * The state after a full tank depends only on its odometer and date, so
+     * the cycles of the remaining entries are the same as in a full calculation.
+     */
+    public static List<Cycle> calculateCycles(List<FuelEntry> validEntries, Double tankCapacityLiters, FullTank lastFullTank) {
+        return calculateCycles(VehicleSeries.of(validEntries), tankCapacityLiters, lastFullTank);
+    }
+
+    /**
+     * Same calculation over a validated {@link VehicleSeries}; the only allocations are the cycles themselves
+     */
+    public static List<Cycle> calculateCycles(VehicleSeries validEntries, Double tankCapacityLiters, FullTank lastFullTank) {
+        if (tankCapacityLiters == null || tankCapacityLiters <= 0) {
+            return new ArrayList<>(); // Cannot calculate without tank capacity
+        }
+
+        List<Cycle> cycles = new ArrayList<>();
+        double tankCapacity = tankCapacityLiters;
+        double remainingFuel = 0.0; // amount of fuel estimated currently in tank
+        boolean hasFullTank = false; // a full tank has been seen
+        double previousOdometer = 0.0; // odometer at last full tank
+        LocalDateTime previousFullDate = null; // date at last full tank
+        double accumulatedFuel = 0.0; // fuel accumulated since last full tank
+
+        if (lastFullTank != null) {
+            remainingFuel = tankCapacity;
+            hasFullTank = true;
+            previousOdometer = lastFullTank.odometer();
+            previousFullDate = lastFullTank.dateTime();
+        }
+
+        for (int i = 0; i < validEntries.size(); i++) {
+            double liters = validEntries.litres(i);
+            double odo = validEntries.odometer(i);
+
+            // Accumulate fuel added since last full tank
+            accumulatedFuel += liters;
+
+            // If tank is NOT full yet
+            if (remainingFuel + liters < tankCapacity) {
+                remainingFuel += liters;
+                continue; // Continue to next entry
+            }
+
+            // Tank GETS FULL now
+            // consumedSinceLastFull = fuel required to reach full capacity = tankCapacity - remainingFuel
+            double consumedFuel = tankCapacity - remainingFuel;
+
+            // If consumedFuel is 0 or negative, it means tank was already full
+            // In this case, use the accumulated fuel since the last full tank
+            if (consumedFuel <= 0 && hasFullTank) {
+                // Tank was already full, so use accumulated fuel as consumed fuel
+                consumedFuel = accumulatedFuel;
+            }
+
+            // Distance driven since last full tank
+            if (hasFullTank && previousFullDate != null && consumedFuel > 0) {
+                double distance = odo - previousOdometer;
+                if (distance > 0) {
+                    double consumption = (consumedFuel / distance) * 100; // L/100km
+                    cycles.add(new Cycle(
+                        previousOdometer,
+                        odo,
+                        previousFullDate,
+                        validEntries.dateTime(i),
+                        distance,
+                        consumedFuel,
+                        consumption,
+                        validEntries.id(i)
+                    ));
+                }
+            }
+
+            // Update state
+            hasFullTank = true;
+            previousOdometer = odo;
+            previousFullDate = validEntries.dateTime(i);
+            remainingFuel = tankCapacity; // Tank is now full
+            accumulatedFuel = 0.0; // Reset accumulated fuel for next cycle
+
+            // After tank is full, do NOT add extra liters beyond capacity
+            // Extra liters from the same refuel (overfill situation) must NOT be counted
+            // They simply indicate the real previous remainingFuel was lower
+            // and the consumedFuel calculation already covered the correct amount
+        }
+
+        return cycles;
+    }
+
+    // One consumption cycle between two full tanks; endEntryId is the entry that filled the tank
+    public record Cycle(
+        Double fromOdometer,
+        Double toOdometer,
+        LocalDateTime fromDate,
+        LocalDateTime toDate,
+        double distance,
+        double fuelConsumed,
+        double consumption,
+        Long endEntryId
+    ) {}
+
+    // A point where the tank was full, used to resume the calculation
+    public record FullTank(
+        double odometer,
+        LocalDateTime dateTime
+    ) {}
+}
@@ -0,0 +1,189 @@
+package fi.laalo.fueltracker.service;
+
+import fi.laalo.fueltracker.event.FuelEntryChangedEvent;
+import fi.laalo.fueltracker.event.VehicleChangedEvent;
+import fi.laalo.fueltracker.model.ConsumptionCycle;
+import fi.laalo.fueltracker.model.Vehicle;
+import fi.laalo.fueltracker.repository.ConsumptionCycleRepository;
+import fi.laalo.fueltracker.repository.FuelEntryRepository;
+import fi.laalo.fueltracker.repository.VehicleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps the consumption_cycles table in sync with fuel entries.
+ * A change only invalidates cycles ending at or after it, so the calculation
+ * restarts from the last stored full tank before the change.
+ */
+@Service
+public class ConsumptionCycleService {
+
+    private static final Logger log = LoggerFactory.getLogger(ConsumptionCycleService.class);
+
+    private final ConsumptionCycleRepository cycleRepository;
+    private final FuelEntryRepository fuelEntryRepository;
+    private final VehicleRepository vehicleRepository;
+    private final AnalyticsStages stages;
+
+    @Value("${fueltracker.analytics.cycles.backfill-on-startup:true}")
+    private boolean backfillOnStartup;
+
+    // "java" runs ConsumptionCalculator over the loaded entries, "sql" computes the cycles in the database
+    @Value("${fueltracker.analytics.cycles.engine:java}")
+    private String engine = "java";
+
+    public ConsumptionCycleService(ConsumptionCycleRepository cycleRepository,
+                                   FuelEntryRepository fuelEntryRepository,
+                                   VehicleRepository vehicleRepository,
+                                   AnalyticsStages stages) {
+        this.cycleRepository = cycleRepository;
+        this.fuelEntryRepository = fuelEntryRepository;
+        this.vehicleRepository = vehicleRepository;
+        this.stages = stages;
+    }
+
+    @Transactional(readOnly = true)
+    public List<ConsumptionCycle> getCycles(Long vehicleId) {
+        return cycleRepository.findByVehicleIdOrderByToDateAscEndEntryIdAsc(vehicleId);
+    }
+
+    @Transactional(readOnly = true)
+    public double getAverageConsumption(Long vehicleId) {
+        Double average = cycleRepository.findAverageConsumptionByVehicleId(vehicleId);
+        return average != null ? average : 0.0;
+    }
+
+    @EventListener
+    @Order(1)
+    @Transactional
+    public void onFuelEntryChanged(FuelEntryChangedEvent event) {
+        recalculateFrom(event.vehicleId(), event.changedFrom());
+    }
+
+    @EventListener
+    @Order(1)
+    @Transactional
+    public void onVehicleChanged(VehicleChangedEvent event) {
+        if (event.tankCapacityChanged()) {
+            recalculateFrom(event.vehicleId(), null);
+        }
+    }
+
+    /**
+     * Recalculate the vehicle's cycles from the given point onward (null = whole history)
+     */
+    @Transactional
+    public void recalculateFrom(Long vehicleId, LocalDateTime changedFrom) {
+        Vehicle vehicle = vehicleRepository.findById(vehicleId).orElse(null);
+        if (vehicle == null || vehicle.getTankCapacityLiters() == null || vehicle.getTankCapacityLiters() <= 0) {
+            cycleRepository.deleteByVehicleId(vehicleId);
+            return;
+        }
+
+        Optional<ConsumptionCycle> restartPoint = changedFrom == null
+                ? Optional.empty()
+                : cycleRepository.findFirstByVehicleIdAndToDateBeforeOrderByToDateDescEndEntryIdDesc(vehicleId, changedFrom);
+
+        if (restartPoint.isPresent()) {
+            ConsumptionCycle last = restartPoint.get();
+            cycleRepository.deleteByVehicleIdAfter(vehicleId, last.getToDate(), last.getEndEntryId());
+        } else {
+            cycleRepository.deleteByVehicleId(vehicleId);
+        }
+
+        List<ConsumptionCalculator.Cycle> cycles = "sql".equals(engine)
+                ? calculateInDatabase(vehicle, restartPoint.orElse(null))
+                : calculateInMemory(vehicle, restartPoint.orElse(null));
+
+        stages.time("recalculate", "persist", () -> cycleRepository.saveAll(cycles.stream()
+                .map(cycle -> toEntity(cycle, vehicle))
+                .toList()), List::size);
+    }
+
+    private List<ConsumptionCalculator.Cycle> calculateInMemory(Vehicle vehicle, ConsumptionCycle restartPoint) {
+        List<FuelEntryRepository.CycleInput> rows;
+        ConsumptionCalculator.FullTank lastFullTank = null;
+        Double lastValidOdometer = null;
+
+        if (restartPoint != null) {
+            rows = stages.time("recalculate", "fetch", () -> fuelEntryRepository.findCycleInputsAfter(
+                    vehicle.getId(), restartPoint.getToDate(), restartPoint.getEndEntryId()), List::size);
+            // The entry that filled the tank was valid, so its odometer is the highest seen so far
+            lastFullTank = new ConsumptionCalculator.FullTank(restartPoint.getToOdometer(), restartPoint.getToDate());
+            lastValidOdometer = restartPoint.getToOdometer();
+        } else {
+            rows = stages.time("recalculate", "fetch",
+                    () -> fuelEntryRepository.findCycleInputs(vehicle.getId()), List::size);
+        }
+
+        Double validFrom = lastValidOdometer;
+        ConsumptionCalculator.FullTank fullTank = lastFullTank;
+        VehicleSeries validEntries = stages.time("recalculate", "validate",
+                () -> VehicleSeries.ofCycleInputs(rows).retainValid(validFrom), VehicleSeries::size);
+        return stages.time("recalculate", "cycles",
+                () -> ConsumptionCalculator.calculateCycles(validEntries, vehicle.getTankCapacityLiters(), fullTank), List::size);
+    }
+
+    // Cycles after a stored full tank are the same as in a full calculation, so the query only filters by position
+    private List<ConsumptionCalculator.Cycle> calculateInDatabase(Vehicle vehicle, ConsumptionCycle restartPoint) {
+        return stages.time("recalculate", "cycles.sql", () -> fuelEntryRepository.calculateCycles(
+                        vehicle.getId(),
+                        vehicle.getTankCapacityLiters(),
+                        restartPoint != null ? restartPoint.getToDate() : null,
+                        restartPoint != null ? restartPoint.getEndEntryId() : null)
+                .stream()
+                .map(row -> new ConsumptionCalculator.Cycle(
+                        row.getFromOdometer(),
+                        row.getToOdometer(),
+                        row.getFromDate(),
+                        row.getToDate(),
+                        row.getDistance(),
+                        row.getFuelConsumed(),
+                        row.getConsumption(),
+                        row.getEndEntryId()))
+                .toList(), List::size);
+    }
+
+    /**
+     * Build cycles for vehicles that have entries but no stored cycles yet
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(1)
+    @Transactional
+    public void backfillMissingCycles() {
+        if (!backfillOnStartup) {
+            return;
+        }
+        List<Long> vehicleIds = cycleRepository.findVehicleIdsWithoutCycles();
+        for (Long vehicleId : vehicleIds) {
+            recalculateFrom(vehicleId, null);
+        }
+        if (!vehicleIds.isEmpty()) {
+            log.info("Calculated consumption cycles for {} vehicles", vehicleIds.size());
+        }
+    }
+
+    private ConsumptionCycle toEntity(ConsumptionCalculator.Cycle cycle, Vehicle vehicle) {
+        ConsumptionCycle entity = new ConsumptionCycle();
+        entity.setVehicle(vehicle);
+        entity.setEndEntryId(cycle.endEntryId());
+        entity.setFromOdometer(cycle.fromOdometer());
+        entity.setToOdometer(cycle.toOdometer());
+        entity.setFromDate(cycle.fromDate());
+        entity.setToDate(cycle.toDate());
+        entity.setDistanceKm(cycle.distance());
+        entity.setLitres(cycle.fuelConsumed());
+        entity.setConsumptionPer100km(cycle.consumption());
+        return entity;
+    }
+}
@@ -1,5 +1,6 @@
 package fi.laalo.fueltracker.service;
 
+import fi.laalo.fueltracker.config.AuthenticatedUser;
 import fi.laalo.fueltracker.model.User;
 import fi.laalo.fueltracker.repository.UserRepository;
 import org.springframework.security.core.GrantedAuthority;
@@ -29,11 +30,7 @@ public class CustomUserDetailsService implements UserDetailsService {
 
         Collection<GrantedAuthority> authorities = getAuthorities(user);
         
-        return org.springframework.security.core.userdetails.User
-                .withUsername(user.getEmail())
-                .password(user.getPassword())
-                .authorities(authorities)
-                .build();
+        return new AuthenticatedUser(user.getId(), user.getEmail(), user.getPassword(), authorities);
     }
 
     private Collection<GrantedAuthority> getAuthorities(User user) {
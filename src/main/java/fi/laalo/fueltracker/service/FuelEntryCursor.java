@@ -0,0 +1,35 @@
+package fi.laalo.fueltracker.service;
+
+import fi.laalo.fueltracker.dto.FuelEntryResponseDTO;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position of an entry in the (dateTime, id) ordering, passed to clients as an opaque string.
+ */
+public record FuelEntryCursor(LocalDateTime dateTime, Long id) {
+
+    public static FuelEntryCursor of(FuelEntryResponseDTO entry) {
+        return new FuelEntryCursor(entry.dateTime(), entry.id());
+    }
+
+    public String encode() {
+        String raw = dateTime + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static FuelEntryCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new FuelEntryCursor(
+                    LocalDateTime.parse(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
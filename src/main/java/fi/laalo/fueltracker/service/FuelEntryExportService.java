@@ -0,0 +1,185 @@
+package fi.laalo.fueltracker.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import fi.laalo.fueltracker.dto.FuelEntryResponseDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a user's fuel history as CSV or NDJSON straight from a forward-only JDBC cursor.
+ * Rows are fetched in batches of the configured fetch size and written as they arrive,
+ * so memory use does not depend on the size of the history. PostgreSQL only honours the
+ * fetch size with autocommit off, hence the read-only transaction around the query.
+ */
+@Service
+public class FuelEntryExportService {
+
+    private static final String CSV_HEADER = "id,vehicle_id,date_time,litres,odometer,price_per_litre,total_price,location,notes";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectWriter jsonWriter;
+
+    public FuelEntryExportService(DataSource dataSource,
+                                  PlatformTransactionManager transactionManager,
+                                  ObjectMapper objectMapper,
+                                  @Value("${fueltracker.export.fetch-size:500}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.jsonWriter = objectMapper.writerFor(FuelEntryResponseDTO.class);
+    }
+
+    public enum Format {
+        CSV("text/csv"),
+        NDJSON("application/x-ndjson");
+
+        private final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String extension() {
+            return name().toLowerCase();
+        }
+
+        public static Format of(String value) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(value)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported export format: " + value);
+        }
+    }
+
+    /**
+     * Write the user's entries, ordered by vehicle and then (dateTime, id).
+     * vehicleId, from (inclusive) and to (exclusive) are optional filters.
+     * The stream is flushed but not closed.
+     */
+    public void export(OutputStream out, Format format, Long userId, Long vehicleId,
+                       LocalDateTime from, LocalDateTime to) throws IOException {
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, vehicle_id, date_time, litres, odometer, price_per_litre, total_price, location, notes " +
+                "FROM fuel_entries WHERE user_id = ?");
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        if (vehicleId != null) {
+            sql.append(" AND vehicle_id = ?");
+            params.add(vehicleId);
+        }
+        if (from != null) {
+            sql.append(" AND date_time >= ?");
+            params.add(Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND date_time < ?");
+            params.add(Timestamp.valueOf(to));
+        }
+        sql.append(" ORDER BY vehicle_id, date_time, id");
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (format == Format.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(sql.toString(),
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                for (int i = 0; i < params.size(); i++) {
+                    statement.setObject(i + 1, params.get(i));
+                }
+                return statement;
+            }, rs -> {
+                try {
+                    writeRow(writer, format, toDto(rs));
+                } catch (IOException e) {
+                    // Usually the client went away; stops the query
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    private void writeRow(Writer writer, Format format, FuelEntryResponseDTO entry) throws IOException {
+        if (format == Format.NDJSON) {
+            writer.write(jsonWriter.writeValueAsString(entry));
+        } else {
+            writer.write(String.valueOf(entry.id()));
+            writer.write(',');
+            writer.write(String.valueOf(entry.vehicleId()));
+            writer.write(',');
+            writer.write(csv(entry.dateTime()));
+            writer.write(',');
+            writer.write(csv(entry.litres()));
+            writer.write(',');
+            writer.write(csv(entry.odometer()));
+            writer.write(',');
+            writer.write(csv(entry.pricePerLitre()));
+            writer.write(',');
+            writer.write(csv(entry.totalPrice()));
+            writer.write(',');
+            writer.write(csv(entry.location()));
+            writer.write(',');
+            writer.write(csv(entry.notes()));
+        }
+        writer.write('\n');
+    }
+
+    private static FuelEntryResponseDTO toDto(ResultSet rs) throws SQLException {
+        return new FuelEntryResponseDTO(
+                rs.getLong("id"),
+                rs.getLong("vehicle_id"),
+                rs.getObject("litres", Double.class),
+                rs.getObject("odometer", Double.class),
+                rs.getObject("price_per_litre", Double.class),
+                rs.getObject("total_price", Double.class),
+                rs.getObject("date_time", LocalDateTime.class),
+                rs.getString("location"),
+                rs.getString("notes"));
+    }
+
+    // Empty for null; text with separators, quotes or line breaks is quoted (RFC 4180)
+    private static String csv(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,314 @@
+package fi.laalo.fueltracker.service;
+
+import fi.laalo.fueltracker.dto.FuelEntryImportResultDTO;
+import fi.laalo.fueltracker.event.FuelEntryChangedEvent;
+import fi.laalo.fueltracker.model.FuelEntry;
+import fi.laalo.fueltracker.model.User;
+import fi.laalo.fueltracker.model.Vehicle;
+import fi.laalo.fueltracker.repository.FuelEntryRepository;
+import fi.laalo.fueltracker.repository.VehicleRepository;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk import of fuel entries from CSV.
+ * Rows go through parse → validate → odometer/trip resolution → batched insert. Rejected rows
+ * are reported by line number and the valid ones are imported in one transaction, holding the
+ * write lanes of the vehicles from trip resolution to commit, and persisted in
+ * JDBC batches (ids come from a pooled sequence, so Hibernate can batch the inserts). Derived
+ * data is recalculated once per vehicle from its earliest imported entry.
+ *
+ * Columns are matched by header name: vehicle_id, date_time, litres, price_per_litre and either
+ * odometer or trip_distance are required; total_price (default litres × price), location and
+ * notes are optional, anything else (e.g. the id column of an export) is ignored.
+ */
+@Service
+public class FuelEntryImportService {
+
+    private final VehicleRepository vehicleRepository;
+    private final FuelEntryRepository fuelEntryRepository;
+    private final EntityManager entityManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final VehicleWriteLanes writeLanes;
+    private final int batchSize;
+
+    public FuelEntryImportService(VehicleRepository vehicleRepository,
+                                  FuelEntryRepository fuelEntryRepository,
+                                  EntityManager entityManager,
+                                  ApplicationEventPublisher eventPublisher,
+                                  VehicleWriteLanes writeLanes,
+                                  @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int batchSize) {
+        this.vehicleRepository = vehicleRepository;
+        this.fuelEntryRepository = fuelEntryRepository;
+        this.entityManager = entityManager;
+        this.eventPublisher = eventPublisher;
+        this.writeLanes = writeLanes;
+        this.batchSize = batchSize;
+    }
+
+    public FuelEntryImportResultDTO importCsv(InputStream in, Long userId) throws IOException {
+        Map<Long, Vehicle> vehicles = new HashMap<>();
+        for (Vehicle vehicle : vehicleRepository.findByUserId(userId)) {
+            vehicles.put(vehicle.getId(), vehicle);
+        }
+
+        List<FuelEntryImportResultDTO.RowError> errors = new ArrayList<>();
+        List<Row> rows = parse(in, vehicles, errors);
+        int rowCount = rows.size() + errors.size();
+
+        Set<Long> vehicleIds = rows.stream().map(row -> row.vehicleId).collect(Collectors.toSet());
+        int imported = writeLanes.inLanes(vehicleIds, () -> {
+            resolveOdometers(rows, vehicles, errors);
+            List<Row> valid = rows.stream().filter(row -> row.odometer != null).toList();
+            if (!valid.isEmpty()) {
+                insert(valid, userId);
+            }
+            return valid.size();
+        });
+
+        errors.sort(Comparator.comparingLong(FuelEntryImportResultDTO.RowError::line));
+        return new FuelEntryImportResultDTO(rowCount, imported, errors);
+    }
+
+    // Parse and validate everything but trip distances; invalid rows go straight to the error list
+    private List<Row> parse(InputStream in, Map<Long, Vehicle> vehicles,
+                            List<FuelEntryImportResultDTO.RowError> errors) throws IOException {
+        CsvRecordReader reader = new CsvRecordReader(
+                new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        List<String> header = reader.next();
+        if (header == null) {
+            throw new IllegalArgumentException("The file is empty");
+        }
+        Columns columns = Columns.of(header);
+
+        List<Row> rows = new ArrayList<>();
+        List<String> fields;
+        while ((fields = reader.next()) != null) {
+            long line = reader.recordLine();
+            try {
+                Row row = columns.toRow(fields, line);
+                if (!vehicles.containsKey(row.vehicleId)) {
+                    throw new IllegalArgumentException("Unknown vehicle " + row.vehicleId);
+                }
+                rows.add(row);
+            } catch (IllegalArgumentException e) {
+                errors.add(new FuelEntryImportResultDTO.RowError(line, e.getMessage()));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Trip rows get the odometer of the entry just before them in the vehicle's history,
+     * which is either an earlier imported row or an existing entry.
+     */
+    private void resolveOdometers(List<Row> rows, Map<Long, Vehicle> vehicles,
+                                  List<FuelEntryImportResultDTO.RowError> errors) {
+        Map<Long, List<Row>> byVehicle = new LinkedHashMap<>();
+        for (Row row : rows) {
+            byVehicle.computeIfAbsent(row.vehicleId, id -> new ArrayList<>()).add(row);
+        }
+
+        for (Map.Entry<Long, List<Row>> vehicleRows : byVehicle.entrySet()) {
+            List<Row> ordered = vehicleRows.getValue();
+            if (ordered.stream().allMatch(row -> row.odometer != null)) {
+                continue;
+            }
+            ordered.sort(Comparator.comparing((Row row) -> row.dateTime).thenComparingLong(row -> row.line));
+
+            // Later entries with the same timestamp replace earlier ones, matching (dateTime, id) order
+            TreeMap<LocalDateTime, Double> existing = new TreeMap<>();
+            for (FuelEntryRepository.OdometerReading reading : fuelEntryRepository.findOdometerReadings(vehicleRows.getKey())) {
+                existing.put(reading.getDateTime(), reading.getOdometer());
+            }
+            Double initialOdometer = vehicles.get(vehicleRows.getKey()).getInitialOdometer();
+
+            Row previous = null;
+            for (Row row : ordered) {
+                if (row.odometer == null) {
+                    Map.Entry<LocalDateTime, Double> before = existing.floorEntry(row.dateTime);
+                    Double base;
+                    if (previous != null && (before == null || !previous.dateTime.isBefore(before.getKey()))) {
+                        base = previous.odometer;
+                    } else if (before != null) {
+                        base = before.getValue();
+                    } else {
+                        base = initialOdometer;
+                    }
+                    if (base == null) {
+                        errors.add(new FuelEntryImportResultDTO.RowError(row.line,
+                                "No previous odometer reading or initial odometer to add the trip distance to"));
+                        continue;
+                    }
+                    row.odometer = base + row.tripDistance;
+                }
+                previous = row;
+            }
+        }
+    }
+
+    private void insert(List<Row> rows, Long userId) {
+        Map<Long, LocalDateTime> changedFrom = new HashMap<>();
+        for (int start = 0; start < rows.size(); start += batchSize) {
+            // References are cheap; fresh ones per batch because clear() detaches the previous ones
+            User user = entityManager.getReference(User.class, userId);
+            Map<Long, Vehicle> vehicles = new HashMap<>();
+
+            for (Row row : rows.subList(start, Math.min(start + batchSize, rows.size()))) {
+                FuelEntry entry = new FuelEntry();
+                entry.setUser(user);
+                entry.setVehicle(vehicles.computeIfAbsent(row.vehicleId, id -> entityManager.getReference(Vehicle.class, id)));
+                entry.setDateTime(row.dateTime);
+                entry.setLitres(row.litres);
+                entry.setOdometer(row.odometer);
+                entry.setPricePerLitre(row.pricePerLitre);
+                entry.setTotalPrice(row.totalPrice);
+                entry.setLocation(row.location);
+                entry.setNotes(row.notes);
+                entityManager.persist(entry);
+
+                changedFrom.merge(row.vehicleId, row.dateTime, (a, b) -> a.isBefore(b) ? a : b);
+            }
+            // Keeps the persistence context (and memory) small
+            entityManager.flush();
+            entityManager.clear();
+        }
+
+        changedFrom.forEach((vehicleId, from) ->
+                eventPublisher.publishEvent(new FuelEntryChangedEvent(userId, vehicleId, from)));
+    }
+
+    private static class Row {
+        long line;
+        Long vehicleId;
+        LocalDateTime dateTime;
+        Double litres;
+        Double odometer;
+        Double tripDistance;
+        Double pricePerLitre;
+        Double totalPrice;
+        String location;
+        String notes;
+    }
+
+    private record Columns(int vehicleId, int dateTime, int litres, int odometer, int tripDistance,
+                           int pricePerLitre, int totalPrice, int location, int notes) {
+
+        static Columns of(List<String> header) {
+            Map<String, Integer> index = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                index.putIfAbsent(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+            }
+            for (String required : List.of("vehicle_id", "date_time", "litres", "price_per_litre")) {
+                if (!index.containsKey(required)) {
+                    throw new IllegalArgumentException("Missing column: " + required);
+                }
+            }
+            if (!index.containsKey("odometer") && !index.containsKey("trip_distance")) {
+                throw new IllegalArgumentException("Missing column: odometer or trip_distance");
+            }
+            return new Columns(index.get("vehicle_id"), index.get("date_time"), index.get("litres"),
+                    index.getOrDefault("odometer", -1), index.getOrDefault("trip_distance", -1),
+                    index.get("price_per_litre"), index.getOrDefault("total_price", -1),
+                    index.getOrDefault("location", -1), index.getOrDefault("notes", -1));
+        }
+
+        Row toRow(List<String> fields, long line) {
+            Row row = new Row();
+            row.line = line;
+
+            String vehicleIdValue = field(fields, vehicleId);
+            if (vehicleIdValue == null) {
+                throw new IllegalArgumentException("vehicle_id is required");
+            }
+            try {
+                row.vehicleId = Long.parseLong(vehicleIdValue);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("vehicle_id is not a number: " + vehicleIdValue);
+            }
+
+            String dateTimeValue = field(fields, dateTime);
+            if (dateTimeValue == null) {
+                throw new IllegalArgumentException("date_time is required");
+            }
+            try {
+                row.dateTime = LocalDateTime.parse(dateTimeValue.replace(' ', 'T'));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("date_time is not an ISO date-time: " + dateTimeValue);
+            }
+
+            row.litres = positive(fields, litres, "litres", true);
+            row.pricePerLitre = positive(fields, pricePerLitre, "price_per_litre", true);
+            row.odometer = positive(fields, odometer, "odometer", false);
+            if (row.odometer == null) {
+                row.tripDistance = positive(fields, tripDistance, "trip_distance", false);
+                if (row.tripDistance == null) {
+                    throw new IllegalArgumentException("Either odometer or trip_distance is required");
+                }
+            }
+            row.totalPrice = positive(fields, totalPrice, "total_price", false);
+            if (row.totalPrice == null) {
+                row.totalPrice = row.litres * row.pricePerLitre;
+            }
+
+            row.location = limit(field(fields, location), 255, "location");
+            row.notes = limit(field(fields, notes), 1000, "notes");
+            return row;
+        }
+
+        private static String field(List<String> fields, int index) {
+            if (index < 0 || index >= fields.size()) {
+                return null;
+            }
+            String value = fields.get(index).trim();
+            return value.isEmpty() ? null : value;
+        }
+
+        private static Double positive(List<String> fields, int index, String name, boolean required) {
+            String value = field(fields, index);
+            if (value == null) {
+                if (required) {
+                    throw new IllegalArgumentException(name + " is required");
+                }
+                return null;
+            }
+            double number;
+            try {
+                number = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + " is not a number: " + value);
+            }
+            if (!Double.isFinite(number) || number <= 0) {
+                throw new IllegalArgumentException(name + " must be positive");
+            }
+            return number;
+        }
+
+        private static String limit(String value, int maxLength, String name) {
+            if (value != null && value.length() > maxLength) {
+                throw new IllegalArgumentException(name + " is longer than " + maxLength + " characters");
+            }
+            return value;
+        }
+    }
+}
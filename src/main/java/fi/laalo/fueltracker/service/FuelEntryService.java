@@ -1,25 +1,51 @@
 package fi.laalo.fueltracker.service;
 
+import fi.laalo.fueltracker.dto.FuelEntryPageDTO;
+import fi.laalo.fueltracker.dto.FuelEntryResponseDTO;
+import fi.laalo.fueltracker.event.FuelEntryChangedEvent;
+import fi.laalo.fueltracker.exception.ForbiddenException;
+import fi.laalo.fueltracker.exception.ResourceNotFoundException;
 import fi.laalo.fueltracker.model.FuelEntry;
 import fi.laalo.fueltracker.repository.FuelEntryRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import fi.laalo.fueltracker.model.User;
-import fi.laalo.fueltracker.model.Vehicle;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 public class FuelEntryService {
 
+    // Stand-ins for an open end of a date range, inside what both PostgreSQL and H2 can store
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 0, 0);
+
     @Autowired
     private FuelEntryRepository repository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${fueltracker.entries.page-size.default:50}")
+    private int defaultPageSize = 50;
+
+    @Value("${fueltracker.entries.page-size.max:500}")
+    private int maxPageSize = 500;
+
     // CRUD operations
 
+    @Transactional
     public FuelEntry createForUser(FuelEntry entry, User user) {
         entry.setUser(user);
-        return repository.save(entry);
+        return save(entry);
     }
 
     public List<FuelEntry> getAllForUser(Long userId) {
@@ -30,8 +56,53 @@ public class FuelEntryService {
         return repository.findById(id).orElse(null);
     }
 
-    public void deleteEntry(Long id) {
-        repository.deleteById(id);
+    // Entry owned by the user; 404 if it does not exist, 403 if it belongs to someone else
+    public FuelEntry getOwnedEntry(Long id, Long userId) {
+        return repository.findByIdAndUserId(id, userId)
+                .orElseThrow(() -> notOwned(id));
+    }
+
+    @Transactional(readOnly = true)
+    public FuelEntryResponseDTO getOwnedEntryDto(Long id, Long userId) {
+        return repository.findDtoByIdAndUserId(id, userId)
+                .orElseThrow(() -> notOwned(id));
+    }
+
+    // Vehicle the entry currently belongs to, without loading the entry
+    public Long getOwnedEntryVehicleId(Long id, Long userId) {
+        return repository.findVehicleIdByIdAndUserId(id, userId)
+                .orElseThrow(() -> notOwned(id));
+    }
+
+    // Same check when only the id is needed
+    public void checkOwnership(Long id, Long userId) {
+        if (!repository.existsByIdAndUserId(id, userId)) {
+            throw notOwned(id);
+        }
+    }
+
+    private RuntimeException notOwned(Long id) {
+        return repository.existsById(id)
+                ? new ForbiddenException("Not your fuel entry")
+                : new ResourceNotFoundException("Fuel entry not found");
+    }
+
+    /**
+     * Delete the entry if it still belongs to the given vehicle, whose lane the caller holds.
+     * Returns false, deleting nothing, when a concurrent update has moved it to another vehicle.
+     */
+    @Transactional
+    public boolean deleteEntry(Long id, Long vehicleId) {
+        FuelEntry entry = repository.findById(id).orElse(null);
+        if (entry == null) {
+            return true; // Already gone
+        }
+        if (!entry.getVehicle().getId().equals(vehicleId)) {
+            return false;
+        }
+        repository.delete(entry);
+        publishChange(entry, vehicleId, entry.getDateTime());
+        return true;
     }
 
     // Calculation of average fuel consumption
@@ -57,11 +128,113 @@ public class FuelEntryService {
     }
 
     // Adapter convenience methods expected by controllers
+    @Transactional
     public FuelEntry save(FuelEntry entry) {
-        return repository.save(entry);
+        FuelEntry saved = repository.save(entry);
+        publishChange(saved, saved.getVehicle().getId(), saved.getDateTime());
+        return saved;
+    }
+
+    /**
+     * Save an existing entry whose date or vehicle may have changed.
+     * Derived data is recalculated from the earlier of the old and new positions.
+     */
+    @Transactional
+    public FuelEntry update(FuelEntry entry, LocalDateTime previousDateTime, Long previousVehicleId) {
+        FuelEntry saved = repository.save(entry);
+        Long vehicleId = saved.getVehicle().getId();
+
+        if (!vehicleId.equals(previousVehicleId)) {
+            // Moved to another vehicle: both histories change
+            publishChange(saved, previousVehicleId, previousDateTime);
+            publishChange(saved, vehicleId, saved.getDateTime());
+        } else {
+            LocalDateTime changedFrom = saved.getDateTime().isBefore(previousDateTime)
+                    ? saved.getDateTime()
+                    : previousDateTime;
+            publishChange(saved, vehicleId, changedFrom);
+        }
+        return saved;
+    }
+
+    /**
+     * Odometer of the vehicle's latest entry, for trip-distance entries; excludedEntryId
+     * (nullable) leaves out the entry being updated. Reads a single row however long the history is.
+     */
+    @Transactional(readOnly = true)
+    public Optional<Double> getLatestOdometer(Long vehicleId, Long excludedEntryId) {
+        List<Double> odometers = excludedEntryId == null
+                ? repository.findLatestOdometers(vehicleId, Limit.of(1))
+                : repository.findLatestOdometersExcluding(vehicleId, excludedEntryId, Limit.of(1));
+        return odometers.stream().findFirst();
+    }
+
+    @Transactional(readOnly = true)
+    public List<FuelEntryResponseDTO> getDtosByVehicleId(Long vehicleId) {
+        return repository.findDtosByVehicleId(vehicleId);
+    }
+
+    /**
+     * One page of the vehicle's entries in (dateTime, id) order, optionally limited to [from, to).
+     * With a "before" cursor the page ends just before it, otherwise it starts just after "after" (or at the beginning).
+     */
+    @Transactional(readOnly = true)
+    public FuelEntryPageDTO getPageByVehicle(Long vehicleId, LocalDateTime from, LocalDateTime to,
+                                             String after, String before, Integer size) {
+        if (after != null && before != null) {
+            throw new IllegalArgumentException("Use either 'after' or 'before', not both");
+        }
+        int pageSize = size == null ? defaultPageSize : size;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + maxPageSize);
+        }
+
+        // One extra row tells whether there is more in the direction we are reading
+        Limit limit = Limit.of(pageSize + 1);
+        // A range open on one side is closed with a bound no entry reaches, so it stays one query
+        boolean ranged = from != null || to != null;
+        LocalDateTime lower = from != null ? from : EARLIEST;
+        LocalDateTime upper = to != null ? to : LATEST;
+        List<FuelEntryResponseDTO> rows;
+        boolean hasNext;
+        boolean hasPrevious;
+
+        if (before != null) {
+            FuelEntryCursor cursor = FuelEntryCursor.decode(before);
+            rows = new ArrayList<>(ranged
+                    ? repository.findPageBeforeInRange(vehicleId, lower, upper, cursor.dateTime(), cursor.id(), limit)
+                    : repository.findPageBefore(vehicleId, cursor.dateTime(), cursor.id(), limit));
+            hasPrevious = rows.size() > pageSize;
+            if (hasPrevious) {
+                rows.remove(rows.size() - 1);
+            }
+            Collections.reverse(rows);
+            hasNext = true;
+        } else {
+            FuelEntryCursor cursor = after != null ? FuelEntryCursor.decode(after) : null;
+            if (cursor == null) {
+                rows = new ArrayList<>(ranged
+                        ? repository.findFirstPageInRange(vehicleId, lower, upper, limit)
+                        : repository.findFirstPage(vehicleId, limit));
+            } else {
+                rows = new ArrayList<>(ranged
+                        ? repository.findPageAfterInRange(vehicleId, lower, upper, cursor.dateTime(), cursor.id(), limit)
+                        : repository.findPageAfter(vehicleId, cursor.dateTime(), cursor.id(), limit));
+            }
+            hasNext = rows.size() > pageSize;
+            if (hasNext) {
+                rows.remove(rows.size() - 1);
+            }
+            hasPrevious = cursor != null;
+        }
+
+        String nextCursor = hasNext && !rows.isEmpty() ? FuelEntryCursor.of(rows.get(rows.size() - 1)).encode() : null;
+        String previousCursor = hasPrevious && !rows.isEmpty() ? FuelEntryCursor.of(rows.get(0)).encode() : null;
+        return new FuelEntryPageDTO(rows, nextCursor, previousCursor);
     }
 
-    public List<FuelEntry> getByVehicle(Vehicle vehicle) {
-        return repository.findByVehicleOrderByDateTimeAsc(vehicle);
+    private void publishChange(FuelEntry entry, Long vehicleId, LocalDateTime changedFrom) {
+        Long userId = entry.getUser() != null ? entry.getUser().getId() : null;
+        eventPublisher.publishEvent(new FuelEntryChangedEvent(userId, vehicleId, changedFrom));
     }
 }
@@ -0,0 +1,158 @@
+package fi.laalo.fueltracker.service;
+
+import fi.laalo.fueltracker.config.RollupRebuildConfig;
+import fi.laalo.fueltracker.dto.RollupRebuildStatusDTO;
+import fi.laalo.fueltracker.repository.FuelEntryRepository;
+import fi.laalo.fueltracker.repository.MonthlyRollupRepository;
+import fi.laalo.fueltracker.repository.UserRepository;
+import fi.laalo.fueltracker.repository.VehicleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Full rebuild of the monthly rollups.
+ * Users are split into chunks that are processed in parallel, each user in its own transaction.
+ * A user is rebuilt inside the write lanes of their vehicles, so entries written meanwhile
+ * are either part of the rebuild or applied after it, never overwritten by it.
+ */
+@Service
+public class MonthlyRollupRebuildJob {
+
+    private static final Logger log = LoggerFactory.getLogger(MonthlyRollupRebuildJob.class);
+
+    private final MonthlyRollupService rollupService;
+    private final MonthlyRollupRepository rollupRepository;
+    private final FuelEntryRepository fuelEntryRepository;
+    private final UserRepository userRepository;
+    private final VehicleRepository vehicleRepository;
+    private final VehicleWriteLanes writeLanes;
+    private final AnalyticsCache analyticsCache;
+    private final Executor workers;
+
+    @Value("${fueltracker.rollups.rebuild.chunk-size:100}")
+    private int chunkSize;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicInteger totalUsers = new AtomicInteger();
+    private final AtomicInteger processedUsers = new AtomicInteger();
+    private final AtomicInteger failedUsers = new AtomicInteger();
+    private volatile String state = "IDLE";
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+
+    public MonthlyRollupRebuildJob(MonthlyRollupService rollupService,
+                                   MonthlyRollupRepository rollupRepository,
+                                   FuelEntryRepository fuelEntryRepository,
+                                   UserRepository userRepository,
+                                   VehicleRepository vehicleRepository,
+                                   VehicleWriteLanes writeLanes,
+                                   AnalyticsCache analyticsCache,
+                                   @Qualifier(RollupRebuildConfig.REBUILD_EXECUTOR) Executor workers) {
+        this.rollupService = rollupService;
+        this.rollupRepository = rollupRepository;
+        this.fuelEntryRepository = fuelEntryRepository;
+        this.userRepository = userRepository;
+        this.vehicleRepository = vehicleRepository;
+        this.writeLanes = writeLanes;
+        this.analyticsCache = analyticsCache;
+        this.workers = workers;
+    }
+
+    /**
+     * Start a rebuild in the background; if one is already running its status is returned
+     */
+    public RollupRebuildStatusDTO start() {
+        if (!running.compareAndSet(false, true)) {
+            return getStatus();
+        }
+
+        List<Long> userIds;
+        try {
+            userIds = userRepository.findAllIds();
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+
+        totalUsers.set(userIds.size());
+        processedUsers.set(0);
+        failedUsers.set(0);
+        startedAt = Instant.now();
+        finishedAt = null;
+        state = "RUNNING";
+        log.info("Rebuilding monthly rollups for {} users", userIds.size());
+
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int i = 0; i < userIds.size(); i += chunkSize) {
+            List<Long> chunk = userIds.subList(i, Math.min(i + chunkSize, userIds.size()));
+            chunks.add(CompletableFuture.runAsync(() -> rebuildChunk(chunk), workers));
+        }
+
+        CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0]))
+                .whenComplete((result, error) -> {
+                    finishedAt = Instant.now();
+                    state = error == null && failedUsers.get() == 0 ? "COMPLETED" : "FAILED";
+                    running.set(false);
+                    log.info("Monthly rollup rebuild {}: {} users processed, {} failed",
+                            state, processedUsers.get(), failedUsers.get());
+                });
+
+        return getStatus();
+    }
+
+    public RollupRebuildStatusDTO getStatus() {
+        return new RollupRebuildStatusDTO(
+                state,
+                totalUsers.get(),
+                processedUsers.get(),
+                failedUsers.get(),
+                startedAt,
+                finishedAt
+        );
+    }
+
+    /**
+     * Populate the rollups on first start after the table was added
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(2)
+    public void rebuildIfEmpty() {
+        if (rollupRepository.count() == 0 && fuelEntryRepository.count() > 0) {
+            start();
+        }
+    }
+
+    private void rebuildChunk(List<Long> userIds) {
+        for (Long userId : userIds) {
+            try {
+                rebuildUser(userId);
+                analyticsCache.invalidateUser(userId);
+            } catch (RuntimeException e) {
+                failedUsers.incrementAndGet();
+                log.warn("Rebuilding monthly rollups failed for user {}", userId, e);
+            }
+            processedUsers.incrementAndGet();
+        }
+    }
+
+    private void rebuildUser(Long userId) {
+        writeLanes.inLanes(vehicleRepository.findIdsByUserId(userId), () -> {
+            rollupService.rebuildUser(userId);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,238 @@
+package fi.laalo.fueltracker.service;
+
+import fi.laalo.fueltracker.event.FuelEntryChangedEvent;
+import fi.laalo.fueltracker.event.VehicleChangedEvent;
+import fi.laalo.fueltracker.model.ConsumptionCycle;
+import fi.laalo.fueltracker.model.FuelEntry;
+import fi.laalo.fueltracker.model.MonthlyRollup;
+import fi.laalo.fueltracker.model.Vehicle;
+import fi.laalo.fueltracker.repository.ConsumptionCycleRepository;
+import fi.laalo.fueltracker.repository.FuelEntryRepository;
+import fi.laalo.fueltracker.repository.MonthlyRollupRepository;
+import fi.laalo.fueltracker.repository.VehicleRepository;
+import fi.laalo.fueltracker.service.FuelAnalyticsService.MonthlyStatistics;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maintains the monthly_rollups table and serves monthly statistics from it.
+ * Entry validity is per vehicle (same rule as the consumption cycles), so a change
+ * only affects that vehicle's rollups from the month of the change onward.
+ */
+@Service
+public class MonthlyRollupService {
+
+    private final MonthlyRollupRepository rollupRepository;
+    private final FuelEntryRepository fuelEntryRepository;
+    private final ConsumptionCycleRepository cycleRepository;
+    private final VehicleRepository vehicleRepository;
+
+    public MonthlyRollupService(MonthlyRollupRepository rollupRepository,
+                                FuelEntryRepository fuelEntryRepository,
+                                ConsumptionCycleRepository cycleRepository,
+                                VehicleRepository vehicleRepository) {
+        this.rollupRepository = rollupRepository;
+        this.fuelEntryRepository = fuelEntryRepository;
+        this.cycleRepository = cycleRepository;
+        this.vehicleRepository = vehicleRepository;
+    }
+
+    /**
+     * Monthly statistics for all months where the user has entries; months whose entries
+     * are all invalid are included with zero totals, as getMonthlyStatistics returns for them
+     */
+    @Transactional(readOnly = true)
+    public Map<YearMonth, MonthlyStatistics> getAllMonthlyStatistics(Long userId) {
+        Map<YearMonth, MonthlyStatistics> statistics = new HashMap<>();
+        for (MonthlyRollupRepository.MonthlyTotals totals : rollupRepository.sumByUserId(userId)) {
+            YearMonth month = YearMonth.from(totals.getMonthStart());
+            statistics.put(month, toStatistics(month, totals));
+        }
+        return statistics;
+    }
+
+    @Transactional(readOnly = true)
+    public MonthlyStatistics getMonthlyStatistics(Long userId, YearMonth month) {
+        return rollupRepository.sumByUserIdAndMonth(userId, month.atDay(1))
+                .map(totals -> toStatistics(month, totals))
+                .orElse(new MonthlyStatistics(month, 0, 0.0, 0.0, 0.0, 0.0));
+    }
+
+    // Runs after ConsumptionCycleService so the cycles read here are already updated
+    @EventListener
+    @Order(2)
+    @Transactional
+    public void onFuelEntryChanged(FuelEntryChangedEvent event) {
+        recalculateFrom(event.vehicleId(), YearMonth.from(event.changedFrom()));
+    }
+
+    @EventListener
+    @Order(2)
+    @Transactional
+    public void onVehicleChanged(VehicleChangedEvent event) {
+        if (event.tankCapacityChanged()) {
+            recalculateFrom(event.vehicleId(), null);
+        }
+    }
+
+    /**
+     * Recalculate the vehicle's rollups from the given month onward (null = whole history).
+     * Entry and cycle totals are aggregated per month in the database.
+     */
+    @Transactional
+    public void recalculateFrom(Long vehicleId, YearMonth fromMonth) {
+        Vehicle vehicle = vehicleRepository.findById(vehicleId).orElse(null);
+        if (vehicle == null) {
+            rollupRepository.deleteByVehicleId(vehicleId);
+            return;
+        }
+
+        LocalDateTime from = null;
+        if (fromMonth == null) {
+            rollupRepository.deleteByVehicleId(vehicleId);
+        } else {
+            from = fromMonth.atDay(1).atStartOfDay();
+            rollupRepository.deleteByVehicleIdFrom(vehicleId, fromMonth.atDay(1));
+        }
+
+        rollupRepository.saveAll(mergeMonthlyTotals(vehicle,
+                fuelEntryRepository.sumValidEntriesByMonth(vehicleId, from),
+                cycleRepository.sumByMonth(vehicleId, from)));
+    }
+
+    /**
+     * Rebuild all rollups of one user from scratch
+     */
+    @Transactional
+    public void rebuildUser(Long userId) {
+        rollupRepository.deleteByUserId(userId);
+        for (Long vehicleId : vehicleRepository.findIdsByUserId(userId)) {
+            recalculateFrom(vehicleId, null);
+        }
+    }
+
+    /**
+     * Merge the database's monthly entry and cycle totals into rollup rows
+     */
+    public static List<MonthlyRollup> mergeMonthlyTotals(Vehicle vehicle,
+                                                         List<FuelEntryRepository.MonthlyEntryTotals> entryTotals,
+                                                         List<ConsumptionCycleRepository.MonthlyCycleTotals> cycleTotals) {
+        Map<YearMonth, MonthlyRollup> rollups = new TreeMap<>();
+
+        for (FuelEntryRepository.MonthlyEntryTotals totals : entryTotals) {
+            YearMonth month = YearMonth.from(totals.getMonthStart());
+            MonthlyRollup rollup = rollups.computeIfAbsent(month, m -> newRollup(vehicle, m));
+            rollup.setEntryCount(totals.getEntryCount().intValue());
+            rollup.setTotalLitres(totals.getTotalLitres());
+            rollup.setTotalCost(totals.getTotalCost());
+            rollup.setPricePerLitreSum(totals.getPricePerLitreSum());
+        }
+
+        for (ConsumptionCycleRepository.MonthlyCycleTotals totals : cycleTotals) {
+            YearMonth month = YearMonth.from(totals.getMonthStart());
+            MonthlyRollup rollup = rollups.computeIfAbsent(month, m -> newRollup(vehicle, m));
+            rollup.setCycleCount(totals.getCycleCount().intValue());
+            rollup.setConsumptionSum(totals.getConsumptionSum());
+        }
+
+        return new ArrayList<>(rollups.values());
+    }
+
+    /**
+     * Bucket a vehicle's entries and cycles by month in one pass, in memory.
+     * Same result as the database aggregation; used as its reference and in the benchmarks.
+     */
+    public static List<MonthlyRollup> buildRollups(Vehicle vehicle, List<FuelEntry> entries, List<ConsumptionCycle> cycles) {
+        return buildRollups(vehicle, entries, cycles, null);
+    }
+
+    /**
+     * Same as above from the given time on (null = whole history). Validity is decided over the
+     * whole history, and every month with entries gets a row, even when none of them is valid.
+     * The validated series is in date order, so entry sums are kept in locals and only written
+     * to a rollup when the month changes. Cycles count in the month their closing full tank was filled.
+     */
+    public static List<MonthlyRollup> buildRollups(Vehicle vehicle, List<FuelEntry> entries,
+                                                   List<ConsumptionCycle> cycles, LocalDateTime from) {
+        Map<YearMonth, MonthlyRollup> rollups = new TreeMap<>();
+        for (FuelEntry entry : entries) {
+            if (from == null || !entry.getDateTime().isBefore(from)) {
+                rollups.computeIfAbsent(YearMonth.from(entry.getDateTime()), m -> newRollup(vehicle, m));
+            }
+        }
+
+        VehicleSeries validEntries = VehicleSeries.of(entries).retainValid(null);
+        long fromEpochSecond = from == null ? Long.MIN_VALUE : from.toEpochSecond(ZoneOffset.UTC);
+        int i = 0;
+        while (i < validEntries.size() && validEntries.epochSecond(i) < fromEpochSecond) {
+            i++;
+        }
+        while (i < validEntries.size()) {
+            YearMonth month = YearMonth.from(validEntries.dateTime(i));
+            long nextMonthStart = month.plusMonths(1).atDay(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+            int entryCount = 0;
+            double totalLitres = 0.0;
+            double totalCost = 0.0;
+            double pricePerLitreSum = 0.0;
+            for (; i < validEntries.size() && validEntries.epochSecond(i) < nextMonthStart; i++) {
+                entryCount++;
+                totalLitres += validEntries.litres(i);
+                totalCost += validEntries.totalPrice(i);
+                pricePerLitreSum += validEntries.pricePerLitre(i);
+            }
+            MonthlyRollup rollup = rollups.get(month);
+            rollup.setEntryCount(entryCount);
+            rollup.setTotalLitres(totalLitres);
+            rollup.setTotalCost(totalCost);
+            rollup.setPricePerLitreSum(pricePerLitreSum);
+        }
+
+        for (ConsumptionCycle cycle : cycles) {
+            if (from == null || !cycle.getToDate().isBefore(from)) {
+                MonthlyRollup rollup = rollups.computeIfAbsent(YearMonth.from(cycle.getToDate()), m -> newRollup(vehicle, m));
+                rollup.setCycleCount(rollup.getCycleCount() + 1);
+                rollup.setConsumptionSum(rollup.getConsumptionSum() + cycle.getConsumptionPer100km());
+            }
+        }
+
+        return new ArrayList<>(rollups.values());
+    }
+
+    private static MonthlyRollup newRollup(Vehicle vehicle, YearMonth month) {
+        MonthlyRollup rollup = new MonthlyRollup();
+        rollup.setUser(vehicle.getUser());
+        rollup.setVehicle(vehicle);
+        rollup.setMonthStart(month.atDay(1));
+        rollup.setEntryCount(0);
+        rollup.setTotalLitres(0.0);
+        rollup.setTotalCost(0.0);
+        rollup.setPricePerLitreSum(0.0);
+        rollup.setCycleCount(0);
+        rollup.setConsumptionSum(0.0);
+        return rollup;
+    }
+
+    private MonthlyStatistics toStatistics(YearMonth month, MonthlyRollupRepository.MonthlyTotals totals) {
+        long entryCount = totals.getEntryCount();
+        long cycleCount = totals.getCycleCount();
+        return new MonthlyStatistics(
+            month,
+            (int) entryCount,
+            totals.getTotalLitres(),
+            totals.getTotalCost(),
+            entryCount > 0 ? totals.getPricePerLitreSum() / entryCount : 0.0,
+            cycleCount > 0 ? totals.getConsumptionSum() / cycleCount : 0.0
+        );
+    }
+}
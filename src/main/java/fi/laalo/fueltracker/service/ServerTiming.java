@@ -0,0 +1,54 @@
+package fi.laalo.fueltracker.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Stage durations of one request, rendered as a Server-Timing header value.
+ * Bound to the thread that does the work, so services record into it without
+ * passing it around; stages recorded while nothing is bound are only metered.
+ */
+public final class ServerTiming {
+
+    private static final ThreadLocal<ServerTiming> CURRENT = new ThreadLocal<>();
+
+    private final List<String> entries = new ArrayList<>();
+
+    /**
+     * Timing bound to the calling thread, or null
+     */
+    public static ServerTiming current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Run the work with this timing bound to the calling thread
+     */
+    public <T> T bind(Supplier<T> work) {
+        ServerTiming previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * Add a stage; rows may be null
+     */
+    public synchronized void add(String stage, long nanos, Integer rows) {
+        String entry = String.format(Locale.ROOT, "%s;dur=%.1f", stage, nanos / 1_000_000.0);
+        entries.add(rows != null ? entry + ";desc=\"" + rows + " rows\"" : entry);
+    }
+
+    public synchronized String toHeaderValue() {
+        return String.join(", ", entries);
+    }
+}
@@ -0,0 +1,146 @@
+package fi.laalo.fueltracker.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.laalo.fueltracker.dto.TokenResponseDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Issues and verifies HMAC-SHA256 signed tokens ("payload.signature", both base64url).
+ * Verification needs no password hashing and no database access.
+ */
+@Service
+public class TokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenService.class);
+
+    public static final String ACCESS = "access";
+    public static final String REFRESH = "refresh";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final ObjectMapper objectMapper;
+    private final SecretKeySpec key;
+    private final Duration accessTokenTtl;
+    private final Duration refreshTokenTtl;
+    private final Clock clock;
+
+    @Autowired
+    public TokenService(ObjectMapper objectMapper,
+                        @Value("${fueltracker.auth.token.secret:}") String secret,
+                        @Value("${fueltracker.auth.token.require-secret:false}") boolean requireSecret,
+                        @Value("${fueltracker.auth.token.access-ttl:15m}") Duration accessTokenTtl,
+                        @Value("${fueltracker.auth.token.refresh-ttl:7d}") Duration refreshTokenTtl) {
+        this(objectMapper, secret, requireSecret, accessTokenTtl, refreshTokenTtl, Clock.systemUTC());
+    }
+
+    public TokenService(ObjectMapper objectMapper, String secret, Duration accessTokenTtl,
+                        Duration refreshTokenTtl, Clock clock) {
+        this(objectMapper, secret, false, accessTokenTtl, refreshTokenTtl, clock);
+    }
+
+    public TokenService(ObjectMapper objectMapper, String secret, boolean requireSecret, Duration accessTokenTtl,
+                        Duration refreshTokenTtl, Clock clock) {
+        this.objectMapper = objectMapper;
+        this.key = new SecretKeySpec(secretBytes(secret, requireSecret), ALGORITHM);
+        this.accessTokenTtl = accessTokenTtl;
+        this.refreshTokenTtl = refreshTokenTtl;
+        this.clock = clock;
+    }
+
+    private static byte[] secretBytes(String secret, boolean requireSecret) {
+        if (secret == null || secret.isBlank()) {
+            // Production requires a key: a random one would log everyone out on every restart
+            // and would differ between instances, so tokens issued by one fail on the others
+            if (requireSecret) {
+                throw new IllegalStateException("fueltracker.auth.token.secret must be set (AUTH_TOKEN_SECRET)");
+            }
+            // Fine for development and tests; tokens stop working when the application restarts
+            log.warn("fueltracker.auth.token.secret is not set, using a random key");
+            byte[] random = new byte[32];
+            new SecureRandom().nextBytes(random);
+            return random;
+        }
+        byte[] bytes = secret.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < 32) {
+            throw new IllegalStateException("fueltracker.auth.token.secret must be at least 32 bytes");
+        }
+        return bytes;
+    }
+
+    public TokenResponseDTO issueTokens(Long userId, String email, List<String> roles) {
+        long now = clock.instant().getEpochSecond();
+        String accessToken = sign(new TokenClaims(ACCESS, userId, email, roles, now + accessTokenTtl.toSeconds()));
+        String refreshToken = sign(new TokenClaims(REFRESH, userId, email, roles, now + refreshTokenTtl.toSeconds()));
+        return new TokenResponseDTO(accessToken, refreshToken, "Bearer", accessTokenTtl.toSeconds());
+    }
+
+    /**
+     * Claims of a valid, unexpired token of the given type, or null
+     */
+    public TokenClaims verify(String token, String expectedType) {
+        int separator = token.indexOf('.');
+        if (separator <= 0) {
+            return null;
+        }
+        String payload = token.substring(0, separator);
+        byte[] signature;
+        try {
+            signature = DECODER.decode(token.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(mac(payload), signature)) {
+            return null;
+        }
+
+        TokenClaims claims;
+        try {
+            claims = objectMapper.readValue(DECODER.decode(payload), TokenClaims.class);
+        } catch (Exception e) {
+            return null;
+        }
+        if (!expectedType.equals(claims.type()) || claims.expiresAt() <= clock.instant().getEpochSecond()) {
+            return null;
+        }
+        return claims;
+    }
+
+    private String sign(TokenClaims claims) {
+        try {
+            String payload = ENCODER.encodeToString(objectMapper.writeValueAsBytes(claims));
+            return payload + "." + ENCODER.encodeToString(mac(payload));
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not create token", e);
+        }
+    }
+
+    private byte[] mac(String payload) {
+        try {
+            // Mac instances are not thread-safe, so each call gets its own
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public record TokenClaims(String type, Long userId, String email, List<String> roles, long expiresAt) {}
+}
@@ -51,5 +51,10 @@ public User getByEmail(String email) {
     return userRepository.findByEmail(email);
 }
 
+    // Proxy for setting associations without loading the user
+    public User getReference(Long id) {
+        return userRepository.getReferenceById(id);
+    }
+
 
 }
@@ -0,0 +1,190 @@
+package fi.laalo.fueltracker.service;
+
+import fi.laalo.fueltracker.model.FuelEntry;
+import fi.laalo.fueltracker.repository.FuelEntryRepository;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A vehicle's fuel history as parallel primitive arrays, in (dateTime, id) order.
+ * The analytics kernels run over these instead of {@code List<FuelEntry>}, so a
+ * pass over the history reads plain doubles and allocates nothing per entry.
+ * Epoch seconds are the local date time taken as UTC and only used for ordering
+ * and month bucketing; the original date times are kept for the output, and so are
+ * the entries themselves when the series was built from them.
+ */
+public final class VehicleSeries {
+
+    private final long[] ids;
+    private final LocalDateTime[] dateTimes;
+    private final long[] epochSeconds;
+    private final double[] odometers;
+    private final double[] litres;
+    private final double[] pricesPerLitre;
+    private final double[] totalPrices;
+    private final FuelEntry[] entries;
+    private int size;
+
+    private VehicleSeries(int capacity, boolean withPrices, boolean withEntries) {
+        ids = new long[capacity];
+        dateTimes = new LocalDateTime[capacity];
+        epochSeconds = new long[capacity];
+        odometers = new double[capacity];
+        litres = new double[capacity];
+        pricesPerLitre = withPrices ? new double[capacity] : null;
+        totalPrices = withPrices ? new double[capacity] : null;
+        entries = withEntries ? new FuelEntry[capacity] : null;
+    }
+
+    /**
+     * Copy entries into a series, skipping entries with missing odometers.
+     * Input from the repositories is already ordered and is not sorted again.
+     */
+    public static VehicleSeries of(List<FuelEntry> entries) {
+        FuelEntry[] ordered = entries.toArray(new FuelEntry[0]);
+        if (!isOrdered(ordered)) {
+            Arrays.sort(ordered, Comparator.comparing(FuelEntry::getDateTime).thenComparing(FuelEntry::getId));
+        }
+
+        VehicleSeries series = new VehicleSeries(ordered.length, true, true);
+        for (FuelEntry entry : ordered) {
+            if (entry.getOdometer() == null) {
+                continue;
+            }
+            int i = series.size++;
+            series.ids[i] = entry.getId() != null ? entry.getId() : 0L;
+            series.dateTimes[i] = entry.getDateTime();
+            series.epochSeconds[i] = entry.getDateTime().toEpochSecond(ZoneOffset.UTC);
+            series.odometers[i] = entry.getOdometer();
+            series.litres[i] = entry.getLitres();
+            series.pricesPerLitre[i] = entry.getPricePerLitre() != null ? entry.getPricePerLitre() : 0.0;
+            series.totalPrices[i] = entry.getTotalPrice() != null ? entry.getTotalPrice() : 0.0;
+            series.entries[i] = entry;
+        }
+        return series;
+    }
+
+    /**
+     * Series for the cycle calculation from rows the repository returned in (dateTime, id) order.
+     * It has no prices; only the monthly rollups read those.
+     */
+    public static VehicleSeries ofCycleInputs(List<FuelEntryRepository.CycleInput> rows) {
+        VehicleSeries series = new VehicleSeries(rows.size(), false, false);
+        for (FuelEntryRepository.CycleInput row : rows) {
+            if (row.odometer() == null) {
+                continue;
+            }
+            int i = series.size++;
+            series.ids[i] = row.id();
+            series.dateTimes[i] = row.dateTime();
+            series.epochSeconds[i] = row.dateTime().toEpochSecond(ZoneOffset.UTC);
+            series.odometers[i] = row.odometer();
+            series.litres[i] = row.litres();
+        }
+        return series;
+    }
+
+    private static boolean isOrdered(FuelEntry[] entries) {
+        for (int i = 1; i < entries.length; i++) {
+            int byDate = entries[i - 1].getDateTime().compareTo(entries[i].getDateTime());
+            if (byDate > 0 || (byDate == 0 && entries[i - 1].getId() != null && entries[i].getId() != null
+                    && entries[i - 1].getId() > entries[i].getId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drop entries whose odometer is below an earlier reading, in place.
+     * lastValidOdometer continues after an already validated entry (null = start of history).
+     */
+    public VehicleSeries retainValid(Double lastValidOdometer) {
+        boolean hasLast = lastValidOdometer != null;
+        double last = hasLast ? lastValidOdometer : 0.0;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (hasLast && odometers[i] < last) {
+                continue;
+            }
+            if (kept != i) {
+                ids[kept] = ids[i];
+                dateTimes[kept] = dateTimes[i];
+                epochSeconds[kept] = epochSeconds[i];
+                odometers[kept] = odometers[i];
+                litres[kept] = litres[i];
+                if (pricesPerLitre != null) {
+                    pricesPerLitre[kept] = pricesPerLitre[i];
+                    totalPrices[kept] = totalPrices[i];
+                }
+                if (entries != null) {
+                    entries[kept] = entries[i];
+                }
+            }
+            last = odometers[i];
+            hasLast = true;
+            kept++;
+        }
+        Arrays.fill(dateTimes, kept, size, null);
+        if (entries != null) {
+            Arrays.fill(entries, kept, size, null);
+        }
+        size = kept;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long id(int i) {
+        return ids[i];
+    }
+
+    public LocalDateTime dateTime(int i) {
+        return dateTimes[i];
+    }
+
+    public long epochSecond(int i) {
+        return epochSeconds[i];
+    }
+
+    public double odometer(int i) {
+        return odometers[i];
+    }
+
+    public double litres(int i) {
+        return litres[i];
+    }
+
+    public double pricePerLitre(int i) {
+        requirePrices();
+        return pricesPerLitre[i];
+    }
+
+    public double totalPrice(int i) {
+        requirePrices();
+        return totalPrices[i];
+    }
+
+    /**
+     * The entries of the series in order, for callers that need the entities themselves
+     */
+    public List<FuelEntry> entries() {
+        if (entries == null) {
+            throw new IllegalStateException("This series was not loaded from entries");
+        }
+        return new ArrayList<>(Arrays.asList(entries).subList(0, size));
+    }
+
+    private void requirePrices() {
+        if (pricesPerLitre == null) {
+            throw new IllegalStateException("This series was loaded without prices");
+        }
+    }
+}
@@ -1,13 +1,20 @@
 package fi.laalo.fueltracker.service;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
+import fi.laalo.fueltracker.dto.VehicleResponseDTO;
+import fi.laalo.fueltracker.event.VehicleChangedEvent;
+import fi.laalo.fueltracker.exception.ForbiddenException;
+import fi.laalo.fueltracker.exception.ResourceNotFoundException;
 import fi.laalo.fueltracker.repository.VehicleRepository;
 import fi.laalo.fueltracker.model.Vehicle;
 import fi.laalo.fueltracker.model.User;
 
 
 import java.util.List;
+import java.util.Objects;
 
 
 @Service
@@ -16,6 +23,9 @@ public class VehicleService {
     @Autowired
     private VehicleRepository repository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
  // CRUD Operations
 
     // Get all vehicles
@@ -29,14 +39,55 @@ public class VehicleService {
                 .orElseThrow(() -> new RuntimeException("Vehicle not found"));
     }
 
+    // Vehicle owned by the user; 404 if it does not exist, 403 if it belongs to someone else
+    public Vehicle getOwnedVehicle(Long id, Long userId) {
+        return repository.findByIdAndUserId(id, userId)
+                .orElseThrow(() -> notOwned(id));
+    }
+
+    @Transactional(readOnly = true)
+    public VehicleResponseDTO getOwnedVehicleDto(Long id, Long userId) {
+        return repository.findDtoByIdAndUserId(id, userId)
+                .orElseThrow(() -> notOwned(id));
+    }
+
+    // Same check when only the id is needed
+    public void checkOwnership(Long id, Long userId) {
+        if (!repository.existsByIdAndUserId(id, userId)) {
+            throw notOwned(id);
+        }
+    }
+
+    private RuntimeException notOwned(Long id) {
+        return repository.existsById(id)
+                ? new ForbiddenException("Not your vehicle")
+                : new ResourceNotFoundException("Vehicle not found");
+    }
+
     // Add or update vehicle
+    @Transactional
     public Vehicle save(Vehicle vehicle) {
-        return repository.save(vehicle);
+        Vehicle saved = repository.save(vehicle);
+        eventPublisher.publishEvent(new VehicleChangedEvent(getUserId(saved), saved.getId(), false));
+        return saved;
+    }
+
+    // Update vehicle; consumption cycles are recalculated if the tank capacity changed
+    @Transactional
+    public Vehicle update(Vehicle vehicle, Double previousTankCapacity) {
+        Vehicle saved = repository.save(vehicle);
+        boolean tankCapacityChanged = !Objects.equals(previousTankCapacity, saved.getTankCapacityLiters());
+        eventPublisher.publishEvent(new VehicleChangedEvent(getUserId(saved), saved.getId(), tankCapacityChanged));
+        return saved;
     }
 
     // Delete vehicle
+    @Transactional
     public void deleteVehicle(Long id) {
-        repository.deleteById(id);
+        repository.findById(id).ifPresent(vehicle -> {
+            repository.delete(vehicle);
+            eventPublisher.publishEvent(new VehicleChangedEvent(getUserId(vehicle), id, false));
+        });
     }
 
     // Custom query methods
@@ -46,6 +97,11 @@ public class VehicleService {
         return repository.findByUserId(userId);
     }
 
+    @Transactional(readOnly = true)
+    public List<VehicleResponseDTO> getVehicleDtosByUserId(Long userId) {
+        return repository.findDtosByUserId(userId);
+    }
+
     // Check if a vehicle exists by license plate
     public boolean vehicleExistsByLicensePlate(String licensePlate) {
         return repository.existsByLicensePlate(licensePlate);
@@ -55,6 +111,7 @@ public class VehicleService {
         return repository.findByUser(user);
     }
 
-
-
-}
\ No newline at end of file
+    private Long getUserId(Vehicle vehicle) {
+        return vehicle.getUser() != null ? vehicle.getUser().getId() : null;
+    }
+}
@@ -0,0 +1,89 @@
+package fi.laalo.fueltracker.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes writes per vehicle, so a trip entry resolves its odometer from the previous
+ * entry and is committed before the next write to the same vehicle reads it.
+ * Within the process a vehicle maps to one of a fixed set of striped locks, so unrelated
+ * vehicles rarely wait for each other. Across nodes the work also takes a PostgreSQL
+ * transaction-scoped advisory lock on the vehicle. The work runs in a transaction that is
+ * committed before the lane is released.
+ */
+@Component
+public class VehicleWriteLanes {
+
+    // First key of the two-key advisory lock, so these locks cannot clash with other uses
+    private static final int ADVISORY_LOCK_NAMESPACE = 0x46554c45;
+
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final ReentrantLock[] stripes;
+    private final boolean advisoryLocks;
+
+    public VehicleWriteLanes(PlatformTransactionManager transactionManager,
+                             JdbcTemplate jdbcTemplate,
+                             @Value("${fueltracker.write-lanes.stripes:64}") int stripeCount,
+                             @Value("${fueltracker.write-lanes.advisory-locks:true}") boolean advisoryLocks) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.jdbcTemplate = jdbcTemplate;
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.advisoryLocks = advisoryLocks;
+    }
+
+    /**
+     * Run the work in a new or the surrounding transaction while holding the vehicle's lane
+     */
+    public <T> T inLane(Long vehicleId, Supplier<T> work) {
+        return inLanes(List.of(vehicleId), work);
+    }
+
+    /**
+     * Same for several vehicles, e.g. an import. Locks are always taken in ascending order,
+     * so two callers with overlapping vehicles cannot deadlock.
+     */
+    public <T> T inLanes(Collection<Long> vehicleIds, Supplier<T> work) {
+        int[] stripeIndexes = vehicleIds.stream().mapToInt(this::stripe).distinct().sorted().toArray();
+        int[] lockKeys = vehicleIds.stream().mapToInt(id -> Long.hashCode(id)).distinct().sorted().toArray();
+
+        int locked = 0;
+        try {
+            for (int index : stripeIndexes) {
+                stripes[index].lock();
+                locked++;
+            }
+            return transactionTemplate.execute(status -> {
+                if (advisoryLocks) {
+                    for (int key : lockKeys) {
+                        // Released on commit or rollback
+                        jdbcTemplate.query("SELECT pg_advisory_xact_lock(?, ?)", rs -> null,
+                                ADVISORY_LOCK_NAMESPACE, key);
+                    }
+                }
+                return work.get();
+            });
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                stripes[stripeIndexes[i]].unlock();
+            }
+        }
+    }
+
+    private int stripe(Long vehicleId) {
+        // Spread sequential ids before reducing to a stripe
+        int hash = Long.hashCode(vehicleId) * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), stripes.length);
+    }
+}
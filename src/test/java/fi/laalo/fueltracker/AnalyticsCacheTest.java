@@ -0,0 +1,162 @@
+package fi.laalo.fueltracker;
+
+import fi.laalo.fueltracker.event.FuelEntryChangedEvent;
+import fi.laalo.fueltracker.event.VehicleChangedEvent;
+import fi.laalo.fueltracker.service.AnalyticsCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AnalyticsCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AnalyticsCache cache;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new AnalyticsCache(meterRegistry, 100, Duration.ofMinutes(10));
+    }
+
+    private int loadVehicle(Long vehicleId) {
+        return cache.forVehicle("history", vehicleId, () -> CompletableFuture.completedFuture(loads.incrementAndGet())).join();
+    }
+
+    private int loadMonth(Long userId, YearMonth month) {
+        return cache.forUser("monthly", userId, month, () -> CompletableFuture.completedFuture(loads.incrementAndGet())).join();
+    }
+
+    // Test 1: Repeated reads are served from the cache and counted as hits
+    @Test
+    void testRepeatedReadsHitCache() {
+        // Act
+        int first = loadVehicle(1L);
+        int second = loadVehicle(1L);
+
+        // Assert
+        assertEquals(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "analytics").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "analytics").tag("result", "miss").functionCounter().count());
+
+        System.out.println("✅ AnalyticsCache - Serves repeated reads from the cache");
+    }
+
+    // Test 2: A fuel entry change reloads that vehicle and its user, but not other vehicles
+    @Test
+    void testEntryChangeInvalidatesVehicleAndUser() {
+        // Arrange
+        YearMonth month = YearMonth.of(2024, 3);
+        loadVehicle(1L);
+        int vehicle2 = loadVehicle(2L);
+        loadMonth(10L, month);
+
+        // Act
+        cache.onFuelEntryChanged(new FuelEntryChangedEvent(10L, 1L, LocalDateTime.of(2024, 3, 5, 12, 0)));
+
+        // Assert
+        assertEquals(vehicle2, loadVehicle(2L));
+        assertEquals(4, loadVehicle(1L));
+        assertEquals(5, loadMonth(10L, month));
+        assertEquals(5, loads.get());
+
+        System.out.println("✅ AnalyticsCache - Entry change reloads the vehicle and user results");
+    }
+
+    // Test 3: The after-commit bump also hides results computed while the write was in progress
+    @Test
+    void testAfterCommitBumpHidesInFlightResults() {
+        // Arrange
+        cache.onVehicleChanged(new VehicleChangedEvent(10L, 1L, true));
+        int readDuringTransaction = loadVehicle(1L);
+
+        // Act
+        cache.afterVehicleCommitted(new VehicleChangedEvent(10L, 1L, true));
+
+        // Assert
+        assertEquals(readDuringTransaction + 1, loadVehicle(1L));
+
+        System.out.println("✅ AnalyticsCache - Results read before commit are not served after it");
+    }
+
+    // Test 4: Concurrent misses get the running computation's future instead of starting their own
+    @Test
+    void testConcurrentMissesShareOneComputation() throws Exception {
+        // Arrange
+        int callers = 8;
+        CompletableFuture<Integer> computation = new CompletableFuture<>();
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        List<Future<CompletableFuture<Integer>>> results = new ArrayList<>();
+
+        // Act: nobody blocks, the computation is still running when every caller has its future
+        for (int i = 0; i < callers; i++) {
+            results.add(executor.submit(() -> cache.forVehicle("history", 1L, () -> {
+                loads.incrementAndGet();
+                return computation;
+            })));
+        }
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (Future<CompletableFuture<Integer>> result : results) {
+            futures.add(result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        computation.complete(42);
+
+        // Assert
+        for (CompletableFuture<Integer> future : futures) {
+            assertEquals(42, future.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(callers - 1, coalescedCount());
+        assertEquals(1, loads.get());
+        assertEquals(42, loadVehicle(1L));
+        cache.invalidate(1L, null);
+        assertEquals(2, loadVehicle(1L));
+
+        System.out.println("✅ AnalyticsCache - Concurrent misses share one computation");
+    }
+
+    // Test 5: A caller giving up does not affect the others, and a failed computation is not cached
+    @Test
+    void testFailedComputationSharedAndNotCached() {
+        // Arrange
+        CompletableFuture<Integer> computation = new CompletableFuture<>();
+        CompletableFuture<Integer> first = cache.forVehicle("history", 1L, () -> computation);
+        CompletableFuture<Integer> follower = cache.forVehicle("history", 1L, () -> CompletableFuture.completedFuture(-1));
+
+        // Act
+        follower.cancel(true);
+        computation.completeExceptionally(new IllegalStateException("boom"));
+
+        // Assert
+        assertTrue(follower.isCancelled());
+        CompletionException e = assertThrows(CompletionException.class, first::join);
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertEquals(1, loadVehicle(1L));
+
+        System.out.println("✅ AnalyticsCache - Failures are shared but not cached");
+    }
+
+    private double coalescedCount() {
+        var counter = meterRegistry.find("fueltracker.analytics.coalesced").tag("kind", "history").counter();
+        return counter != null ? counter.count() : 0.0;
+    }
+}
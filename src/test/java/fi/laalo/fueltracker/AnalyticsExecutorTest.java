@@ -0,0 +1,175 @@
+package fi.laalo.fueltracker;
+
+import fi.laalo.fueltracker.exception.GlobalExceptionHandler;
+import fi.laalo.fueltracker.exception.ServiceUnavailableException;
+import fi.laalo.fueltracker.service.AnalyticsExecutor;
+import fi.laalo.fueltracker.service.AnalyticsStages;
+import fi.laalo.fueltracker.service.ServerTiming;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Backpressure and deadlines of the analytics executor, with one worker thread.
+ */
+public class AnalyticsExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+    private AnalyticsExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private AnalyticsExecutor create(int queueCapacity, Duration deadline) {
+        executor = new AnalyticsExecutor(meterRegistry, 1, queueCapacity, deadline, Duration.ofSeconds(7));
+        return executor;
+    }
+
+    private String blockUntilReleased() {
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+            Thread.currentThread().interrupt();
+        }
+        return "done";
+    }
+
+    // Test 1: Results are returned and queue wait and compute time are recorded per operation
+    @Test
+    void testCompletesAndRecordsTimings() throws Exception {
+        // Arrange
+        create(10, Duration.ofSeconds(5));
+
+        // Act
+        String result = executor.submit("history", () -> "ok").get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals("ok", result);
+        assertEquals(1, meterRegistry.get("fueltracker.analytics.queue.wait").tag("operation", "history").timer().count());
+        assertEquals(1, meterRegistry.get("fueltracker.analytics.compute").tag("operation", "history").timer().count());
+
+        System.out.println("✅ AnalyticsExecutor - Completes work and records queue and compute time");
+    }
+
+    // Test 2: A full queue rejects immediately with a retry hint
+    @Test
+    void testFullQueueRejects() {
+        // Arrange
+        create(1, Duration.ofSeconds(5));
+        executor.submit("monthly", this::blockUntilReleased);
+        executor.submit("monthly", this::blockUntilReleased);
+
+        // Act
+        ServiceUnavailableException e = assertThrows(ServiceUnavailableException.class,
+                () -> executor.submit("monthly", this::blockUntilReleased));
+
+        // Assert
+        assertEquals(Duration.ofSeconds(7), e.getRetryAfter());
+        assertEquals(1.0, meterRegistry.get("fueltracker.analytics.rejected")
+                .tag("operation", "monthly").tag("reason", "saturated").counter().count());
+
+        System.out.println("✅ AnalyticsExecutor - Rejects when the queue is full");
+    }
+
+    // Test 3: Missing the deadline fails the request, and work still queued by then is skipped
+    @Test
+    void testDeadlineFailsAndSkipsQueuedWork() throws Exception {
+        // Arrange
+        create(10, Duration.ofMillis(100));
+        AtomicInteger queuedRuns = new AtomicInteger();
+        CompletableFuture<String> running = executor.submit("history", this::blockUntilReleased);
+        CompletableFuture<Integer> queued = executor.submit("history", queuedRuns::incrementAndGet);
+
+        // Act
+        ExecutionException e = assertThrows(ExecutionException.class, () -> running.get(5, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+        release.countDown();
+        executor.submit("history", () -> "after").get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertInstanceOf(ServiceUnavailableException.class, e.getCause());
+        assertEquals(0, queuedRuns.get());
+
+        System.out.println("✅ AnalyticsExecutor - Gives up after the deadline and skips stale work");
+    }
+
+    // Test 4: Work still running at the deadline is interrupted and frees the worker
+    @Test
+    void testDeadlineInterruptsRunningWork() throws Exception {
+        // Arrange
+        create(10, Duration.ofMillis(100));
+        CompletableFuture<String> running = executor.submit("monthly", this::blockUntilReleased);
+
+        // Act
+        assertThrows(ExecutionException.class, () -> running.get(5, TimeUnit.SECONDS));
+
+        // Assert: the worker is free again without the work being released
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals("next", executor.submit("monthly", () -> "next").get(5, TimeUnit.SECONDS));
+        assertEquals(1.0, meterRegistry.get("fueltracker.analytics.rejected")
+                .tag("operation", "monthly").tag("reason", "deadline").counter().count());
+
+        System.out.println("✅ AnalyticsExecutor - Interrupts work that missed its deadline");
+    }
+
+    // Test 5: The rejection becomes 503 with Retry-After
+    @Test
+    void testRejectionMapsTo503WithRetryAfter() {
+        // Act
+        ResponseEntity<Map<String, Object>> response = new GlobalExceptionHandler().handleServiceUnavailableException(
+                new ServiceUnavailableException("Analytics are busy", Duration.ofSeconds(7)));
+
+        // Assert
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("7", response.getHeaders().getFirst("Retry-After"));
+
+        System.out.println("✅ AnalyticsExecutor - Busy responses are 503 with Retry-After");
+    }
+
+    // Test 6: Stages of the work are metered with their row counts and echoed in Server-Timing
+    @Test
+    void testStagesRecordedIntoServerTiming() throws Exception {
+        // Arrange
+        create(10, Duration.ofSeconds(5));
+        AnalyticsStages stages = new AnalyticsStages(meterRegistry);
+        ServerTiming timing = new ServerTiming();
+
+        // Act
+        executor.submit("history", timing,
+                () -> stages.time("history", "fetch", () -> List.of(1, 2, 3), List::size)).get(5, TimeUnit.SECONDS);
+        String header = timing.toHeaderValue();
+
+        // Assert
+        assertTrue(header.matches("fetch;dur=\\d+\\.\\d;desc=\"3 rows\", queue;dur=\\d+\\.\\d, compute;dur=\\d+\\.\\d"), header);
+        assertEquals(1, meterRegistry.get("fueltracker.analytics.stage").tag("stage", "fetch").timer().count());
+        assertEquals(3.0, meterRegistry.get("fueltracker.analytics.stage.rows").tag("stage", "fetch").summary().totalAmount());
+        assertNull(ServerTiming.current());
+
+        System.out.println("✅ AnalyticsExecutor - Stage timings reach metrics and Server-Timing");
+    }
+}
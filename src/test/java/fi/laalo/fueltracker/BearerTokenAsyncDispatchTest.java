@@ -0,0 +1,135 @@
+package fi.laalo.fueltracker;
+
+import fi.laalo.fueltracker.config.SecurityConfig;
+import fi.laalo.fueltracker.controller.AnalyticsController;
+import fi.laalo.fueltracker.controller.FuelEntryController;
+import fi.laalo.fueltracker.service.CustomUserDetailsService;
+import fi.laalo.fueltracker.service.FuelAnalyticsService;
+import fi.laalo.fueltracker.service.FuelEntryExportService;
+import fi.laalo.fueltracker.service.FuelEntryImportService;
+import fi.laalo.fueltracker.service.FuelEntryService;
+import fi.laalo.fueltracker.service.TokenService;
+import fi.laalo.fueltracker.service.UserService;
+import fi.laalo.fueltracker.service.VehicleService;
+import fi.laalo.fueltracker.service.VehicleWriteLanes;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Async endpoints called with a bearer token, through the real security configuration.
+ * The response is written in a second (ASYNC) dispatch, which is authorized again.
+ */
+@WebMvcTest({FuelEntryController.class, AnalyticsController.class})
+@Import({SecurityConfig.class, TokenService.class, SimpleMeterRegistry.class})
+public class BearerTokenAsyncDispatchTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @MockitoBean
+    private CustomUserDetailsService userDetailsService;
+
+    @MockitoBean
+    private FuelEntryService fuelEntryService;
+
+    @MockitoBean
+    private UserService userService;
+
+    @MockitoBean
+    private VehicleService vehicleService;
+
+    @MockitoBean
+    private FuelEntryExportService exportService;
+
+    @MockitoBean
+    private FuelEntryImportService importService;
+
+    @MockitoBean
+    private VehicleWriteLanes writeLanes;
+
+    @MockitoBean
+    private FuelAnalyticsService analyticsService;
+
+    private String bearer() {
+        return "Bearer " + tokenService.issueTokens(1L, "test@example.com", List.of("ROLE_USER")).accessToken();
+    }
+
+    // Test 1: GET /api/fuelentries/export - A token-authenticated export streams in the async dispatch
+    @Test
+    void testExportWithBearerToken() throws Exception {
+        // Arrange
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(0);
+            out.write("id,vehicle_id\n1,1\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(exportService).export(any(), eq(FuelEntryExportService.Format.CSV), eq(1L), isNull(), isNull(), isNull());
+
+        // Act
+        MvcResult result = mockMvc.perform(get("/api/fuelentries/export").header(HttpHeaders.AUTHORIZATION, bearer()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string("id,vehicle_id\n1,1\n"));
+
+        System.out.println("✅ Bearer token - Export streams in the async dispatch");
+    }
+
+    // Test 2: GET /api/fuelentries/export - Without a token nothing is started
+    @Test
+    void testExportWithoutToken() throws Exception {
+        mockMvc.perform(get("/api/fuelentries/export"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(request().asyncNotStarted());
+
+        System.out.println("✅ Bearer token - Export requires a token");
+    }
+
+    // Test 3: GET /api/analytics/vehicles/{id}/consumption - A token-authenticated result is written in the async dispatch
+    @Test
+    void testAnalyticsWithBearerToken() throws Exception {
+        // Arrange
+        when(analyticsService.getConsumptionPerVehicle(eq(1L), any())).thenReturn(CompletableFuture.completedFuture(6.5));
+
+        // Act
+        MvcResult result = mockMvc.perform(get("/api/analytics/vehicles/1/consumption").header(HttpHeaders.AUTHORIZATION, bearer()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").value(6.5));
+
+        System.out.println("✅ Bearer token - Analytics answer in the async dispatch");
+    }
+}
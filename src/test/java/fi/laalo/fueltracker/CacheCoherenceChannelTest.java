@@ -0,0 +1,109 @@
+package fi.laalo.fueltracker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.laalo.fueltracker.event.FuelEntryChangedEvent;
+import fi.laalo.fueltracker.event.VehicleChangedEvent;
+import fi.laalo.fueltracker.service.AnalyticsCache;
+import fi.laalo.fueltracker.service.CacheCoherenceChannel;
+import fi.laalo.fueltracker.service.CacheCoherenceChannel.ChangeNotification;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+public class CacheCoherenceChannelTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private AnalyticsCache analyticsCache;
+    private CacheCoherenceChannel channel;
+
+    @BeforeEach
+    void setUp() {
+        analyticsCache = mock(AnalyticsCache.class);
+        channel = new CacheCoherenceChannel(analyticsCache, mock(JdbcTemplate.class), new DataSourceProperties(), objectMapper);
+    }
+
+    private String payload(String node, Long userId, Long vehicleId) throws Exception {
+        return objectMapper.writeValueAsString(new ChangeNotification(node, userId, vehicleId));
+    }
+
+    // Test 1: Notifications from another node evict only the affected vehicle and user
+    @Test
+    void testNotificationsEvictVehicleAndUser() throws Exception {
+        // Act
+        channel.handle(payload("node-a", 10L, 1L));
+        channel.handle(payload("node-a", 10L, 2L));
+
+        // Assert
+        verify(analyticsCache).invalidate(1L, 10L);
+        verify(analyticsCache).invalidate(2L, 10L);
+        verify(analyticsCache, never()).invalidateAll();
+
+        System.out.println("✅ CacheCoherenceChannel - Evicts the changed vehicle and user");
+    }
+
+    // Test 2: Two interleaved writers committing in the opposite order, and a third rolling back, flush nothing
+    @Test
+    void testInterleavedWritersAndRollback() {
+        // Arrange: three transactions on another node publish their changes in this order
+        JdbcTemplate otherJdbcTemplate = mock(JdbcTemplate.class);
+        CacheCoherenceChannel otherNode = new CacheCoherenceChannel(mock(AnalyticsCache.class), otherJdbcTemplate,
+                new DataSourceProperties(), objectMapper);
+        otherNode.onFuelEntryChanged(new FuelEntryChangedEvent(10L, 1L, LocalDateTime.of(2024, 5, 1, 8, 0)));
+        otherNode.onFuelEntryChanged(new FuelEntryChangedEvent(10L, 2L, LocalDateTime.of(2024, 5, 2, 8, 0)));
+        otherNode.onVehicleChanged(new VehicleChangedEvent(20L, 3L, true));
+
+        ArgumentCaptor<String> sent = ArgumentCaptor.forClass(String.class);
+        verify(otherJdbcTemplate, times(3)).query(eq("SELECT pg_notify(?, ?)"), any(ResultSetExtractor.class),
+                eq("fueltracker_changes"), sent.capture());
+        List<String> payloads = sent.getAllValues();
+        assertEquals(3, payloads.size());
+
+        // Act: PostgreSQL delivers in commit order, the second writer first, and drops the rolled back one
+        channel.handle(payloads.get(1));
+        channel.handle(payloads.get(0));
+
+        // Assert
+        verify(analyticsCache).invalidate(2L, 10L);
+        verify(analyticsCache).invalidate(1L, 10L);
+        verify(analyticsCache, never()).invalidate(eq(3L), anyLong());
+        verify(analyticsCache, never()).invalidateAll();
+
+        System.out.println("✅ CacheCoherenceChannel - Out-of-order commits and rollbacks do not flush the cache");
+    }
+
+    // Test 3: The node's own notifications and malformed payloads are ignored
+    @Test
+    void testOwnAndMalformedPayloadsIgnored() {
+        // Arrange
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        CacheCoherenceChannel node = new CacheCoherenceChannel(analyticsCache, jdbcTemplate, new DataSourceProperties(), objectMapper);
+        node.onFuelEntryChanged(new FuelEntryChangedEvent(10L, 1L, null));
+        ArgumentCaptor<String> sent = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).query(eq("SELECT pg_notify(?, ?)"), any(ResultSetExtractor.class), eq("fueltracker_changes"), sent.capture());
+
+        // Act
+        node.handle(sent.getValue());
+        node.handle("not json");
+
+        // Assert
+        verifyNoInteractions(analyticsCache);
+
+        System.out.println("✅ CacheCoherenceChannel - Ignores its own and malformed notifications");
+    }
+}
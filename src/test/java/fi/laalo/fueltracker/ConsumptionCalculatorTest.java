@@ -0,0 +1,134 @@
+package fi.laalo.fueltracker;
+
+import fi.laalo.fueltracker.model.FuelEntry;
+import fi.laalo.fueltracker.service.ConsumptionCalculator;
+import fi.laalo.fueltracker.service.VehicleSeries;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class ConsumptionCalculatorTest {
+
+    private static final double TANK_CAPACITY = 55.0;
+
+    private List<FuelEntry> createHistory(long seed, int size) {
+        Random random = new Random(seed);
+        List<FuelEntry> entries = new ArrayList<>();
+        LocalDateTime dateTime = LocalDateTime.of(2020, 1, 1, 12, 0);
+        double odometer = 20000.0;
+        for (int i = 0; i < size; i++) {
+            // Mostly normal fills, some partial top-ups and the occasional bad odometer reading
+            boolean badReading = random.nextInt(15) == 0;
+            double litres = random.nextInt(4) == 0 ? 10 + random.nextDouble() * 15 : 35 + random.nextDouble() * 25;
+            odometer += 200 + random.nextDouble() * 600;
+            dateTime = dateTime.plusDays(1 + random.nextInt(14));
+
+            FuelEntry entry = new FuelEntry();
+            entry.setId((long) i + 1);
+            entry.setDateTime(dateTime);
+            entry.setLitres(litres);
+            entry.setOdometer(badReading ? odometer - 5000 : odometer);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    // Test 1: Resuming from any stored full tank gives the same cycles as calculating the whole history
+    @Test
+    void testResumeFromFullTankMatchesFullCalculation() {
+        for (long seed = 1; seed <= 20; seed++) {
+            // Arrange
+            List<FuelEntry> history = createHistory(seed, 120);
+            List<ConsumptionCalculator.Cycle> full = ConsumptionCalculator.calculateCycles(
+                    ConsumptionCalculator.getValidEntries(history), TANK_CAPACITY);
+            assertFalse(full.isEmpty());
+
+            for (int i = 0; i < full.size(); i++) {
+                ConsumptionCalculator.Cycle restartPoint = full.get(i);
+                List<FuelEntry> remaining = history.stream()
+                        .filter(e -> e.getId() > restartPoint.endEntryId())
+                        .toList();
+
+                // Act
+                List<ConsumptionCalculator.Cycle> resumed = ConsumptionCalculator.calculateCycles(
+                        ConsumptionCalculator.getValidEntries(remaining, restartPoint.toOdometer()),
+                        TANK_CAPACITY,
+                        new ConsumptionCalculator.FullTank(restartPoint.toOdometer(), restartPoint.toDate()));
+
+                // Assert
+                assertEquals(full.subList(i + 1, full.size()), resumed,
+                        "Seed " + seed + ", restart after cycle " + i);
+            }
+        }
+
+        System.out.println("✅ ConsumptionCalculator - Resumed calculation matches full calculation");
+    }
+
+    // Test 2: Entries with decreasing odometer are skipped
+    @Test
+    void testValidEntriesSkipDecreasingOdometer() {
+        // Arrange
+        List<FuelEntry> history = createHistory(42, 200);
+
+        // Act
+        List<FuelEntry> valid = ConsumptionCalculator.getValidEntries(history);
+
+        // Assert
+        for (int i = 1; i < valid.size(); i++) {
+            assertFalse(valid.get(i).getOdometer() < valid.get(i - 1).getOdometer());
+        }
+
+        System.out.println("✅ ConsumptionCalculator - Skips decreasing odometer readings");
+    }
+
+    // Test 3: No cycles without a tank capacity
+    @Test
+    void testNoCyclesWithoutTankCapacity() {
+        List<FuelEntry> history = createHistory(7, 30);
+
+        assertEquals(List.of(), ConsumptionCalculator.calculateCycles(history, null));
+        assertEquals(List.of(), ConsumptionCalculator.calculateCycles(history, 0.0));
+
+        System.out.println("✅ ConsumptionCalculator - No cycles without tank capacity");
+    }
+
+    // Test 4: Validation keeps every reading not below an earlier one, whatever the input order
+    @Test
+    void testValidationIgnoresInputOrder() {
+        for (long seed = 1; seed <= 10; seed++) {
+            // Arrange: the history is generated in order, so a running maximum picks the valid entries
+            List<FuelEntry> history = createHistory(seed, 150);
+            List<Long> expected = new ArrayList<>();
+            double maxOdometer = Double.NEGATIVE_INFINITY;
+            for (FuelEntry entry : history) {
+                if (entry.getOdometer() >= maxOdometer) {
+                    expected.add(entry.getId());
+                    maxOdometer = entry.getOdometer();
+                }
+            }
+            List<FuelEntry> shuffled = new ArrayList<>(history);
+            Collections.shuffle(shuffled, new Random(seed));
+
+            // Act
+            List<FuelEntry> valid = ConsumptionCalculator.getValidEntries(shuffled);
+            VehicleSeries series = VehicleSeries.of(shuffled).retainValid(null);
+
+            // Assert
+            List<Long> seriesIds = new ArrayList<>();
+            for (int i = 0; i < series.size(); i++) {
+                seriesIds.add(series.id(i));
+            }
+            assertEquals(expected, valid.stream().map(FuelEntry::getId).toList(), "Seed " + seed);
+            assertEquals(expected, seriesIds, "Seed " + seed);
+        }
+
+        System.out.println("✅ ConsumptionCalculator - Validation does not depend on input order");
+    }
+}
@@ -0,0 +1,217 @@
+package fi.laalo.fueltracker;
+
+import fi.laalo.fueltracker.model.FuelEntry;
+import fi.laalo.fueltracker.model.User;
+import fi.laalo.fueltracker.model.Vehicle;
+import fi.laalo.fueltracker.repository.FuelEntryRepository;
+import fi.laalo.fueltracker.service.ConsumptionCalculator;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.jdbc.Sql;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * The SQL cycle engine against ConsumptionCalculator, on an in-memory database.
+ * The odometer column is made nullable for the class, as it is in databases created before it was required.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Sql(statements = "ALTER TABLE fuel_entries ALTER COLUMN odometer SET NULL", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_CLASS)
+@Sql(statements = "ALTER TABLE fuel_entries ALTER COLUMN odometer SET NOT NULL", executionPhase = Sql.ExecutionPhase.AFTER_TEST_CLASS)
+public class CycleEngineDifferentialTest {
+
+    private static final double TOLERANCE = 1e-9;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private FuelEntryRepository fuelEntryRepository;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setEmail("test@example.com");
+        user.setPassword("secret");
+        entityManager.persist(user);
+    }
+
+    // Partial and full fills with some bad odometer readings and shared timestamps
+    private List<FuelEntry> createHistory(Vehicle vehicle, long seed, int count) {
+        Random random = new Random(seed);
+        List<FuelEntry> entries = new ArrayList<>();
+        LocalDateTime dateTime = LocalDateTime.of(2023, 1, 1, 8, 0);
+        double odometer = 10000.0;
+        for (int i = 0; i < count; i++) {
+            odometer += random.nextInt(8) == 0 ? 0 : 100 + random.nextInt(600);
+            if (random.nextInt(5) != 0) {
+                dateTime = dateTime.plusHours(6 + random.nextInt(300));
+            }
+            FuelEntry entry = new FuelEntry();
+            entry.setUser(user);
+            entry.setVehicle(vehicle);
+            entry.setDateTime(dateTime);
+            entry.setLitres(random.nextInt(4) == 0 ? 5.0 + random.nextInt(15) : 30.0 + random.nextInt(25) + random.nextInt(100) / 100.0);
+            entry.setOdometer(random.nextInt(10) == 0 ? odometer - 1000 - random.nextInt(5000) : odometer);
+            entry.setPricePerLitre(1.70 + random.nextInt(40) / 100.0);
+            entry.setTotalPrice(entry.getLitres() * entry.getPricePerLitre());
+            entityManager.persist(entry);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private FuelEntry createEntry(Vehicle vehicle, LocalDateTime dateTime, double odometer, double litres) {
+        FuelEntry entry = new FuelEntry();
+        entry.setUser(user);
+        entry.setVehicle(vehicle);
+        entry.setDateTime(dateTime);
+        entry.setLitres(litres);
+        entry.setOdometer(odometer);
+        entry.setPricePerLitre(1.80);
+        entry.setTotalPrice(litres * 1.80);
+        entityManager.persist(entry);
+        return entry;
+    }
+
+    private Vehicle createVehicle(String licensePlate, double tankCapacity) {
+        Vehicle vehicle = new Vehicle();
+        vehicle.setMake("Toyota");
+        vehicle.setModel("Corolla");
+        vehicle.setFuelType("Gasoline");
+        vehicle.setManufacturingYear(2015);
+        vehicle.setLicensePlate(licensePlate);
+        vehicle.setTankCapacityLiters(tankCapacity);
+        vehicle.setUser(user);
+        entityManager.persist(vehicle);
+        return vehicle;
+    }
+
+    private List<ConsumptionCalculator.Cycle> sqlCycles(Vehicle vehicle, LocalDateTime afterDate, Long afterId) {
+        return fuelEntryRepository.calculateCycles(vehicle.getId(), vehicle.getTankCapacityLiters(), afterDate, afterId)
+                .stream()
+                .map(row -> new ConsumptionCalculator.Cycle(row.getFromOdometer(), row.getToOdometer(),
+                        row.getFromDate(), row.getToDate(), row.getDistance(), row.getFuelConsumed(),
+                        row.getConsumption(), row.getEndEntryId()))
+                .toList();
+    }
+
+    private void assertSameCycles(List<ConsumptionCalculator.Cycle> expected, List<ConsumptionCalculator.Cycle> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            ConsumptionCalculator.Cycle e = expected.get(i);
+            ConsumptionCalculator.Cycle a = actual.get(i);
+            assertEquals(e.endEntryId(), a.endEntryId());
+            assertEquals(e.fromDate(), a.fromDate());
+            assertEquals(e.toDate(), a.toDate());
+            assertEquals(e.fromOdometer(), a.fromOdometer(), TOLERANCE);
+            assertEquals(e.toOdometer(), a.toOdometer(), TOLERANCE);
+            assertEquals(e.distance(), a.distance(), TOLERANCE);
+            assertEquals(e.fuelConsumed(), a.fuelConsumed(), TOLERANCE);
+            assertEquals(e.consumption(), a.consumption(), TOLERANCE);
+        }
+    }
+
+    // Test 1: Both engines produce the same cycles for a range of histories and tank sizes
+    @Test
+    void testSqlEngineMatchesCalculator() {
+        // Arrange
+        double[] capacities = {40.0, 50.0, 65.0, 120.0};
+        List<Vehicle> vehicles = new ArrayList<>();
+        List<List<FuelEntry>> histories = new ArrayList<>();
+        for (int seed = 0; seed < capacities.length; seed++) {
+            Vehicle vehicle = createVehicle("ABC-" + seed, capacities[seed]);
+            vehicles.add(vehicle);
+            histories.add(createHistory(vehicle, seed, 80));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        for (int i = 0; i < vehicles.size(); i++) {
+            Vehicle vehicle = vehicles.get(i);
+            List<ConsumptionCalculator.Cycle> expected = ConsumptionCalculator.calculateCycles(
+                    ConsumptionCalculator.getValidEntries(histories.get(i)), vehicle.getTankCapacityLiters());
+
+            // Act
+            List<ConsumptionCalculator.Cycle> actual = sqlCycles(vehicle, null, null);
+
+            // Assert
+            assertFalse(expected.isEmpty());
+            assertSameCycles(expected, actual);
+        }
+
+        System.out.println("✅ Cycle engines - SQL cycles match the Java calculation");
+    }
+
+    // Test 2: Resuming after a stored cycle gives the tail of the full calculation
+    @Test
+    void testSqlEngineResumesAfterCycle() {
+        // Arrange
+        Vehicle vehicle = createVehicle("XYZ-999", 50.0);
+        List<FuelEntry> entries = createHistory(vehicle, 42, 80);
+        entityManager.flush();
+        entityManager.clear();
+
+        List<ConsumptionCalculator.Cycle> full = ConsumptionCalculator.calculateCycles(
+                ConsumptionCalculator.getValidEntries(entries), vehicle.getTankCapacityLiters());
+        ConsumptionCalculator.Cycle restartPoint = full.get(full.size() / 2);
+
+        // Act
+        List<ConsumptionCalculator.Cycle> resumed = sqlCycles(vehicle, restartPoint.toDate(), restartPoint.endEntryId());
+
+        // Assert
+        assertSameCycles(full.subList(full.size() / 2 + 1, full.size()), resumed);
+
+        System.out.println("✅ Cycle engines - SQL engine resumes after a stored cycle");
+    }
+
+    // Test 3: Entries without an odometer before the first reading are skipped, as in the calculator
+    @Test
+    void testSqlEngineSkipsLeadingEntriesWithoutOdometer() {
+        // Arrange: the first entry has no predecessor and no odometer, and alone nearly fills the tank
+        Vehicle vehicle = createVehicle("NUL-001", 50.0);
+        LocalDateTime start = LocalDateTime.of(2024, 3, 1, 8, 0);
+        List<FuelEntry> entries = List.of(
+                createEntry(vehicle, start, 9500.0, 45.0),
+                createEntry(vehicle, start.plusDays(5), 10000.0, 10.0),
+                createEntry(vehicle, start.plusDays(10), 10500.0, 40.0),
+                createEntry(vehicle, start.plusDays(15), 11000.0, 30.0),
+                createEntry(vehicle, start.plusDays(20), 11200.0, 20.0),
+                createEntry(vehicle, start.plusDays(25), 11400.0, 35.0));
+        entityManager.flush();
+        entityManager.clear();
+        for (FuelEntry entry : List.of(entries.get(0), entries.get(4))) {
+            entityManager.createNativeQuery("UPDATE fuel_entries SET odometer = NULL WHERE id = ?1")
+                    .setParameter(1, entry.getId())
+                    .executeUpdate();
+            entry.setOdometer(null);
+        }
+
+        List<FuelEntry> validEntries = ConsumptionCalculator.getValidEntries(entries);
+        List<ConsumptionCalculator.Cycle> expected = ConsumptionCalculator.calculateCycles(validEntries, vehicle.getTankCapacityLiters());
+
+        // Act
+        List<ConsumptionCalculator.Cycle> actual = sqlCycles(vehicle, null, null);
+        List<FuelEntryRepository.MonthlyEntryTotals> months = fuelEntryRepository.sumValidEntriesByMonth(vehicle.getId(), null);
+
+        // Assert
+        assertEquals(2, expected.size());
+        assertSameCycles(expected, actual);
+        assertEquals(1, months.size());
+        assertEquals(validEntries.size(), months.get(0).getEntryCount());
+        assertEquals(validEntries.stream().mapToDouble(FuelEntry::getLitres).sum(), months.get(0).getTotalLitres(), TOLERANCE);
+
+        System.out.println("✅ Cycle engines - Leading entries without an odometer are not valid");
+    }
+}
@@ -0,0 +1,209 @@
+package fi.laalo.fueltracker;
+
+import fi.laalo.fueltracker.model.FuelEntry;
+import fi.laalo.fueltracker.model.User;
+import fi.laalo.fueltracker.model.Vehicle;
+import fi.laalo.fueltracker.repository.FuelEntryRepository;
+import fi.laalo.fueltracker.repository.UserRepository;
+import fi.laalo.fueltracker.repository.VehicleRepository;
+import fi.laalo.fueltracker.service.AnalyticsCache;
+import fi.laalo.fueltracker.service.ConsumptionCycleService;
+import fi.laalo.fueltracker.service.MonthlyRollupService;
+import fi.laalo.fueltracker.service.TokenService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * SQL statement budgets per endpoint, through the whole stack against a database.
+ * The fixture is large enough (two vehicles, a year of entries each) that a query per
+ * entry, month or vehicle blows the budget. Raise a budget only together with the
+ * change that needs the extra statement.
+ */
+@SpringBootTest
+@ActiveProfiles("querybudget")
+public class EndpointQueryBudgetTest {
+
+    private static final int ENTRIES_PER_VEHICLE = 24;
+    // Writes also run the cycle and rollup recalculation, and now and then fetch a block of ids from a sequence
+    private static final int WRITE_BUDGET = 12;
+    private static final AtomicInteger FIXTURES = new AtomicInteger();
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private VehicleRepository vehicleRepository;
+
+    @Autowired
+    private FuelEntryRepository fuelEntryRepository;
+
+    @Autowired
+    private ConsumptionCycleService cycleService;
+
+    @Autowired
+    private MonthlyRollupService rollupService;
+
+    @Autowired
+    private AnalyticsCache analyticsCache;
+
+    @Autowired
+    private TokenService tokenService;
+
+    private StatementCountingMockMvc mockMvc;
+    private String bearer;
+    private Vehicle vehicle;
+    private FuelEntry lastEntry;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = new StatementCountingMockMvc(MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build());
+
+        // A user of its own per test, so tests do not see each other's writes
+        int fixture = FIXTURES.incrementAndGet();
+        User owner = new User();
+        owner.setEmail("budget" + fixture + "@example.com");
+        owner.setPassword("secret");
+        owner = userRepository.save(owner);
+        // A real access token, so the requests go through the token filter and the async dispatch like a client's
+        bearer = "Bearer " + tokenService.issueTokens(owner.getId(), owner.getEmail(), List.of("ROLE_USER")).accessToken();
+
+        for (int v = 0; v < 2; v++) {
+            vehicle = createVehicle(owner, "BUD-" + fixture + v);
+            List<FuelEntry> entries = new ArrayList<>();
+            for (int i = 0; i < ENTRIES_PER_VEHICLE; i++) {
+                FuelEntry entry = new FuelEntry();
+                entry.setUser(owner);
+                entry.setVehicle(vehicle);
+                entry.setDateTime(LocalDateTime.of(2024, 1, 3, 8, 0).plusDays(i * 15L));
+                entry.setLitres(40.0);
+                entry.setOdometer(10000.0 + i * 600);
+                entry.setPricePerLitre(1.9);
+                entry.setTotalPrice(76.0);
+                entries.add(entry);
+            }
+            List<FuelEntry> saved = fuelEntryRepository.saveAll(entries);
+            lastEntry = saved.get(saved.size() - 1);
+            cycleService.recalculateFrom(vehicle.getId(), null);
+        }
+        rollupService.rebuildUser(owner.getId());
+
+        // Budgets are for cold reads
+        analyticsCache.invalidateAll();
+    }
+
+    private Vehicle createVehicle(User owner, String licensePlate) {
+        Vehicle created = new Vehicle();
+        created.setMake("Toyota");
+        created.setModel("Corolla");
+        created.setFuelType("Gasoline");
+        created.setManufacturingYear(2015);
+        created.setLicensePlate(licensePlate);
+        created.setTankCapacityLiters(50.0);
+        created.setInitialOdometer(9000.0);
+        created.setUser(owner);
+        return vehicleRepository.save(created);
+    }
+
+    private MockHttpServletRequestBuilder as(MockHttpServletRequestBuilder request) {
+        return request.header(HttpHeaders.AUTHORIZATION, bearer);
+    }
+
+    private MockHttpServletRequestBuilder json(MockHttpServletRequestBuilder request, String body) {
+        return as(request).contentType(MediaType.APPLICATION_JSON).content(body);
+    }
+
+    private String entryJson(String dateTime, String odometer, String tripDistance) {
+        return "{\"vehicleId\":" + vehicle.getId() + ",\"dateTime\":\"" + dateTime + "\",\"litres\":40.0,"
+                + "\"odometer\":" + odometer + ",\"tripDistance\":" + tripDistance + ",\"useTrip\":" + (tripDistance != null)
+                + ",\"pricePerLitre\":1.9,\"totalPrice\":76.0}";
+    }
+
+    // Test 1: Vehicle reads and updates
+    @Test
+    void testVehicleEndpointBudgets() throws Exception {
+        mockMvc.perform("GET /api/vehicles", 1, as(get("/api/vehicles")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2));
+        mockMvc.perform("GET /api/vehicles/{id}", 1, as(get("/api/vehicles/" + vehicle.getId())))
+                .andExpect(status().isOk());
+        mockMvc.perform("PUT /api/vehicles/{id}", WRITE_BUDGET, json(put("/api/vehicles/" + vehicle.getId()),
+                        "{\"make\":\"Toyota\",\"model\":\"Corolla\",\"fuelType\":\"Gasoline\",\"manufacturingYear\":2015,"
+                                + "\"licensePlate\":\"" + vehicle.getLicensePlate() + "\",\"initialOdometer\":9000.0,\"tankCapacityLiters\":45.0}"))
+                .andExpect(status().isOk());
+
+        System.out.println("✅ Query budget - Vehicle endpoints");
+    }
+
+    // Test 2: Fuel entry reads
+    @Test
+    void testFuelEntryReadBudgets() throws Exception {
+        mockMvc.perform("GET /api/fuelentries/vehicle/{vehicleId}", 2, as(get("/api/fuelentries/vehicle/" + vehicle.getId())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(ENTRIES_PER_VEHICLE));
+        mockMvc.perform("GET /api/fuelentries/vehicle/{vehicleId}/page", 2, as(get("/api/fuelentries/vehicle/" + vehicle.getId() + "/page")))
+                .andExpect(status().isOk());
+        mockMvc.perform("GET /api/fuelentries/{id}", 1, as(get("/api/fuelentries/" + lastEntry.getId())))
+                .andExpect(status().isOk());
+
+        System.out.println("✅ Query budget - Fuel entry reads");
+    }
+
+    // Test 3: Fuel entry writes, including the cycle and rollup recalculation they trigger
+    @Test
+    void testFuelEntryWriteBudgets() throws Exception {
+        mockMvc.perform("POST /api/fuelentries", WRITE_BUDGET, json(post("/api/fuelentries"), entryJson("2025-03-01T08:00:00", "25000.0", null)))
+                .andExpect(status().isOk());
+        mockMvc.perform("POST /api/fuelentries (trip)", WRITE_BUDGET, json(post("/api/fuelentries"), entryJson("2025-03-15T08:00:00", null, "500.0")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.odometer").value(25500.0));
+        mockMvc.perform("PUT /api/fuelentries/{id}", WRITE_BUDGET, json(put("/api/fuelentries/" + lastEntry.getId()),
+                        entryJson("2024-12-20T08:00:00", "23900.0", null)))
+                .andExpect(status().isOk());
+        mockMvc.perform("DELETE /api/fuelentries/{id}", WRITE_BUDGET, as(delete("/api/fuelentries/" + lastEntry.getId())))
+                .andExpect(status().isNoContent());
+
+        System.out.println("✅ Query budget - Fuel entry writes");
+    }
+
+    // Test 4: Analytics on a cold cache
+    @Test
+    void testAnalyticsBudgets() throws Exception {
+        mockMvc.perform("GET /api/analytics/vehicles/{vehicleId}/consumption", 2,
+                        as(get("/api/analytics/vehicles/" + vehicle.getId() + "/consumption")))
+                .andExpect(status().isOk());
+        mockMvc.perform("GET /api/analytics/vehicles/{vehicleId}/history", 2,
+                        as(get("/api/analytics/vehicles/" + vehicle.getId() + "/history")))
+                .andExpect(status().isOk());
+        mockMvc.perform("GET /api/analytics/monthly/{year}/{month}", 1, as(get("/api/analytics/monthly/2024/6")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.entryCount").value(4));
+        mockMvc.perform("GET /api/analytics/monthly", 1, as(get("/api/analytics/monthly")))
+                .andExpect(status().isOk());
+
+        System.out.println("✅ Query budget - Analytics endpoints");
+    }
+}
@@ -1,14 +1,21 @@
 package fi.laalo.fueltracker;
 
 import fi.laalo.fueltracker.controller.FuelEntryController;
+import fi.laalo.fueltracker.dto.FuelEntryPageDTO;
 import fi.laalo.fueltracker.dto.FuelEntryResponseDTO;
+import fi.laalo.fueltracker.exception.ForbiddenException;
+import fi.laalo.fueltracker.exception.ResourceNotFoundException;
 import fi.laalo.fueltracker.mapper.FuelEntryMapper;
 import fi.laalo.fueltracker.model.FuelEntry;
 import fi.laalo.fueltracker.model.User;
 import fi.laalo.fueltracker.model.Vehicle;
+import fi.laalo.fueltracker.service.FuelEntryExportService;
+import fi.laalo.fueltracker.service.FuelEntryImportService;
 import fi.laalo.fueltracker.service.FuelEntryService;
 import fi.laalo.fueltracker.service.UserService;
 import fi.laalo.fueltracker.service.VehicleService;
+import fi.laalo.fueltracker.service.VehicleWriteLanes;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -16,13 +23,23 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.times;
@@ -44,6 +61,22 @@ public class FuelEntryControllerTest {
     @MockitoBean
     private VehicleService vehicleService;
 
+    @MockitoBean
+    private FuelEntryExportService exportService;
+
+    @MockitoBean
+    private FuelEntryImportService importService;
+
+    @MockitoBean
+    private VehicleWriteLanes writeLanes;
+
+    @BeforeEach
+    void setUp() {
+        // Run the work directly, as the lane would
+        when(writeLanes.inLane(any(), any())).thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        when(writeLanes.inLanes(any(), any())).thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+    }
+
     private User createTestUser() {
         User user = new User();
         user.setId(1L);
@@ -84,7 +117,7 @@ public class FuelEntryControllerTest {
         FuelEntry entry = createTestFuelEntry(user, vehicle);
 
         when(userService.getByEmail("test@example.com")).thenReturn(user);
-        when(vehicleService.getById(1L)).thenReturn(vehicle);
+        when(vehicleService.getOwnedVehicle(1L, 1L)).thenReturn(vehicle);
         when(fuelEntryService.save(any(FuelEntry.class))).thenReturn(entry);
 
         // Act & Assert
@@ -118,7 +151,7 @@ public class FuelEntryControllerTest {
         FuelEntry entry = createTestFuelEntry(user, vehicle);
 
         when(userService.getByEmail("test@example.com")).thenReturn(user);
-        when(fuelEntryService.getEntryById(1L)).thenReturn(entry);
+        when(fuelEntryService.getOwnedEntryDto(1L, 1L)).thenReturn(FuelEntryMapper.toDto(entry));
 
         // Act & Assert
         mockMvc.perform(get("/api/fuelentries/1"))
@@ -126,7 +159,7 @@ public class FuelEntryControllerTest {
                 .andExpect(jsonPath("$.litres").value(45.5))
                 .andExpect(jsonPath("$.odometer").value(12500.0));
 
-        verify(fuelEntryService, times(1)).getEntryById(1L);
+        verify(fuelEntryService, times(1)).getOwnedEntryDto(1L, 1L);
         System.out.println("✅ GET /api/fuelentries/{id} - Returns fuel entry by ID");
     }
 
@@ -142,11 +175,10 @@ public class FuelEntryControllerTest {
         entry2.setId(2L);
         entry2.setOdometer(13000.0);
 
-        List<FuelEntry> entries = Arrays.asList(entry1, entry2);
+        List<FuelEntryResponseDTO> entries = Arrays.asList(FuelEntryMapper.toDto(entry1), FuelEntryMapper.toDto(entry2));
 
         when(userService.getByEmail("test@example.com")).thenReturn(user);
-        when(vehicleService.getById(1L)).thenReturn(vehicle);
-        when(fuelEntryService.getByVehicle(vehicle)).thenReturn(entries);
+        when(fuelEntryService.getDtosByVehicleId(1L)).thenReturn(entries);
 
         // Act & Assert
         mockMvc.perform(get("/api/fuelentries/vehicle/1"))
@@ -155,7 +187,8 @@ public class FuelEntryControllerTest {
                 .andExpect(jsonPath("$[0].odometer").value(12500.0))
                 .andExpect(jsonPath("$[1].odometer").value(13000.0));
 
-        verify(fuelEntryService, times(1)).getByVehicle(vehicle);
+        verify(vehicleService, times(1)).checkOwnership(1L, 1L);
+        verify(fuelEntryService, times(1)).getDtosByVehicleId(1L);
         System.out.println("✅ GET /api/fuelentries/vehicle/{vehicleId} - Returns entries by vehicle");
     }
 
@@ -170,9 +203,11 @@ public class FuelEntryControllerTest {
         entry.setLitres(50.0);
 
         when(userService.getByEmail("test@example.com")).thenReturn(user);
-        when(fuelEntryService.getEntryById(1L)).thenReturn(entry);
-        when(vehicleService.getById(1L)).thenReturn(vehicle);
-        when(fuelEntryService.save(any(FuelEntry.class))).thenReturn(entry);
+        when(fuelEntryService.getOwnedEntryVehicleId(1L, 1L)).thenReturn(1L);
+        when(fuelEntryService.deleteEntry(1L, 1L)).thenReturn(true);
+        when(fuelEntryService.getOwnedEntry(1L, 1L)).thenReturn(entry);
+        when(vehicleService.getOwnedVehicle(1L, 1L)).thenReturn(vehicle);
+        when(fuelEntryService.update(any(FuelEntry.class), any(), any())).thenReturn(entry);
 
         // Act & Assert
         mockMvc.perform(put("/api/fuelentries/1")
@@ -190,7 +225,7 @@ public class FuelEntryControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.litres").value(50.0));
 
-        verify(fuelEntryService, times(1)).save(any(FuelEntry.class));
+        verify(fuelEntryService, times(1)).update(any(FuelEntry.class), any(), eq(1L));
         System.out.println("✅ PUT /api/fuelentries/{id} - Updates fuel entry");
     }
 
@@ -200,17 +235,99 @@ public class FuelEntryControllerTest {
     void testDeleteFuelEntry() throws Exception {
         // Arrange
         User user = createTestUser();
-        Vehicle vehicle = createTestVehicle(user);
-        FuelEntry entry = createTestFuelEntry(user, vehicle);
 
         when(userService.getByEmail("test@example.com")).thenReturn(user);
-        when(fuelEntryService.getEntryById(1L)).thenReturn(entry);
+        when(fuelEntryService.getOwnedEntryVehicleId(1L, 1L)).thenReturn(1L);
+        when(fuelEntryService.deleteEntry(1L, 1L)).thenReturn(true);
 
         // Act & Assert
         mockMvc.perform(delete("/api/fuelentries/1"))
                 .andExpect(status().isNoContent());
 
-        verify(fuelEntryService, times(1)).deleteEntry(1L);
+        verify(writeLanes, times(1)).inLane(eq(1L), any());
+        verify(fuelEntryService, times(1)).deleteEntry(1L, 1L);
         System.out.println("✅ DELETE /api/fuelentries/{id} - Deletes fuel entry");
     }
+
+    // Test 6: GET /api/fuelentries/vehicle/{vehicleId}/page - Get one page of entries
+    @Test
+    @WithMockUser(username = "test@example.com")
+    void testGetEntryPageByVehicle() throws Exception {
+        // Arrange
+        User user = createTestUser();
+        Vehicle vehicle = createTestVehicle(user);
+        FuelEntry entry = createTestFuelEntry(user, vehicle);
+
+        FuelEntryPageDTO page = new FuelEntryPageDTO(List.of(FuelEntryMapper.toDto(entry)), "next-cursor", null);
+
+        when(userService.getByEmail("test@example.com")).thenReturn(user);
+        when(fuelEntryService.getPageByVehicle(eq(1L), eq(LocalDateTime.of(2024, 1, 1, 0, 0)), isNull(), isNull(), isNull(), eq(1)))
+                .thenReturn(page);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/fuelentries/vehicle/1/page")
+                        .param("from", "2024-01-01T00:00:00")
+                        .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.entries[0].odometer").value(12500.0))
+                .andExpect(jsonPath("$.nextCursor").value("next-cursor"))
+                .andExpect(jsonPath("$.previousCursor").isEmpty());
+
+        System.out.println("✅ GET /api/fuelentries/vehicle/{vehicleId}/page - Returns a page of entries");
+    }
+
+    // Test 7: Missing entries return 404 and other users' vehicles 403
+    @Test
+    @WithMockUser(username = "test@example.com")
+    void testOwnershipErrors() throws Exception {
+        // Arrange
+        User user = createTestUser();
+
+        when(userService.getByEmail("test@example.com")).thenReturn(user);
+        when(fuelEntryService.getOwnedEntryDto(99L, 1L)).thenThrow(new ResourceNotFoundException("Fuel entry not found"));
+        doThrow(new ForbiddenException("Not your vehicle")).when(vehicleService).checkOwnership(2L, 1L);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/fuelentries/99"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.message").value("Fuel entry not found"));
+
+        mockMvc.perform(get("/api/fuelentries/vehicle/2"))
+                .andExpect(status().isForbidden())
+                .andExpect(jsonPath("$.message").value("Not your vehicle"));
+
+        System.out.println("✅ GET /api/fuelentries - Returns 404 and 403 for ownership errors");
+    }
+
+    // Test 8: GET /api/fuelentries/export - Streams a gzip-compressed export
+    @Test
+    @WithMockUser(username = "test@example.com")
+    void testExportEntriesGzip() throws Exception {
+        // Arrange
+        User user = createTestUser();
+        when(userService.getByEmail("test@example.com")).thenReturn(user);
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(0);
+            out.write("id,vehicle_id\n1,1\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(exportService).export(any(), eq(FuelEntryExportService.Format.CSV), eq(1L), eq(1L), isNull(), isNull());
+
+        // Act
+        MvcResult result = mockMvc.perform(get("/api/fuelentries/export").param("vehicleId", "1").param("gzip", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        byte[] body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/gzip"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"fuel-history.csv.gz\""))
+                .andReturn().getResponse().getContentAsByteArray();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertEquals("id,vehicle_id\n1,1\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        verify(vehicleService, times(1)).checkOwnership(1L, 1L);
+        System.out.println("✅ GET /api/fuelentries/export - Streams a compressed export");
+    }
 }
@@ -0,0 +1,138 @@
+package fi.laalo.fueltracker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import fi.laalo.fueltracker.model.FuelEntry;
+import fi.laalo.fueltracker.model.User;
+import fi.laalo.fueltracker.model.Vehicle;
+import fi.laalo.fueltracker.service.FuelEntryExportService;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The history export against an in-memory database.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+public class FuelEntryExportServiceTest {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private FuelEntryExportService exportService;
+    private User user;
+    private Vehicle car;
+    private Vehicle van;
+
+    @BeforeEach
+    void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        // Small fetch size so the cursor has to go back for more rows
+        exportService = new FuelEntryExportService(dataSource, transactionManager, objectMapper, 2);
+
+        user = new User();
+        user.setEmail("test@example.com");
+        user.setPassword("secret");
+        entityManager.persist(user);
+
+        User other = new User();
+        other.setEmail("other@example.com");
+        other.setPassword("secret");
+        entityManager.persist(other);
+
+        car = createVehicle(user, "ABC-123");
+        van = createVehicle(user, "VAN-456");
+        Vehicle otherCar = createVehicle(other, "XYZ-789");
+
+        createEntry(car, LocalDateTime.of(2024, 1, 10, 8, 0), 40.0, 10000.0, "Neste, Helsinki");
+        createEntry(car, LocalDateTime.of(2024, 2, 10, 8, 0), 42.5, 10600.0, "Say \"hi\"");
+        createEntry(car, LocalDateTime.of(2024, 3, 10, 8, 0), 38.0, 11200.0, null);
+        createEntry(van, LocalDateTime.of(2024, 2, 1, 8, 0), 60.0, 50000.0, "ABC");
+        createEntry(otherCar, LocalDateTime.of(2024, 2, 5, 8, 0), 30.0, 7000.0, null);
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private Vehicle createVehicle(User owner, String licensePlate) {
+        Vehicle vehicle = new Vehicle();
+        vehicle.setMake("Toyota");
+        vehicle.setModel("Corolla");
+        vehicle.setFuelType("Gasoline");
+        vehicle.setManufacturingYear(2015);
+        vehicle.setLicensePlate(licensePlate);
+        vehicle.setTankCapacityLiters(50.0);
+        vehicle.setUser(owner);
+        entityManager.persist(vehicle);
+        return vehicle;
+    }
+
+    private void createEntry(Vehicle vehicle, LocalDateTime dateTime, double litres, double odometer, String location) {
+        FuelEntry entry = new FuelEntry();
+        entry.setUser(vehicle.getUser());
+        entry.setVehicle(vehicle);
+        entry.setDateTime(dateTime);
+        entry.setLitres(litres);
+        entry.setOdometer(odometer);
+        entry.setPricePerLitre(2.0);
+        entry.setTotalPrice(litres * 2.0);
+        entry.setLocation(location);
+        entityManager.persist(entry);
+    }
+
+    private String export(FuelEntryExportService.Format format, Long vehicleId, LocalDateTime from, LocalDateTime to) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.export(out, format, user.getId(), vehicleId, from, to);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    // Test 1: CSV contains only the user's entries, ordered and escaped
+    @Test
+    void testCsvExport() throws Exception {
+        // Act
+        String[] lines = export(FuelEntryExportService.Format.CSV, null, null, null).split("\n");
+
+        // Assert
+        assertEquals(5, lines.length);
+        assertEquals("id,vehicle_id,date_time,litres,odometer,price_per_litre,total_price,location,notes", lines[0]);
+        assertEquals(",2024-01-10T08:00,40.0,10000.0,2.0,80.0,\"Neste, Helsinki\",",
+                lines[1].substring(lines[1].indexOf(',', lines[1].indexOf(',') + 1)));
+        assertEquals(",2024-02-10T08:00,42.5,10600.0,2.0,85.0,\"Say \"\"hi\"\"\",",
+                lines[2].substring(lines[2].indexOf(',', lines[2].indexOf(',') + 1)));
+        assertEquals(String.valueOf(van.getId()), lines[4].split(",")[1]);
+
+        System.out.println("✅ FuelEntryExportService - Exports the user's history as CSV");
+    }
+
+    // Test 2: NDJSON honours the vehicle and date range filters
+    @Test
+    void testNdjsonExportWithFilters() throws Exception {
+        // Act
+        String[] lines = export(FuelEntryExportService.Format.NDJSON, car.getId(),
+                LocalDateTime.of(2024, 2, 1, 0, 0), LocalDateTime.of(2024, 3, 10, 8, 0)).split("\n");
+
+        // Assert
+        assertEquals(1, lines.length);
+        assertEquals(42.5, new ObjectMapper().readTree(lines[0]).get("litres").asDouble());
+        assertEquals("2024-02-10T08:00:00", new ObjectMapper().readTree(lines[0]).get("dateTime").asText());
+
+        System.out.println("✅ FuelEntryExportService - Filters the NDJSON export by vehicle and range");
+    }
+}
@@ -0,0 +1,163 @@
+package fi.laalo.fueltracker;
+
+import fi.laalo.fueltracker.dto.FuelEntryImportResultDTO;
+import fi.laalo.fueltracker.event.FuelEntryChangedEvent;
+import fi.laalo.fueltracker.model.FuelEntry;
+import fi.laalo.fueltracker.model.User;
+import fi.laalo.fueltracker.model.Vehicle;
+import fi.laalo.fueltracker.repository.FuelEntryRepository;
+import fi.laalo.fueltracker.repository.VehicleRepository;
+import fi.laalo.fueltracker.service.FuelEntryImportService;
+import fi.laalo.fueltracker.service.VehicleWriteLanes;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * CSV import against an in-memory database.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+public class FuelEntryImportServiceTest {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private VehicleRepository vehicleRepository;
+
+    @Autowired
+    private FuelEntryRepository fuelEntryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ApplicationEventPublisher eventPublisher;
+    private FuelEntryImportService importService;
+    private User user;
+    private Vehicle car;
+    private Vehicle otherCar;
+
+    @BeforeEach
+    void setUp() {
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        // Small batches so the import flushes several times
+        importService = new FuelEntryImportService(vehicleRepository, fuelEntryRepository, entityManager,
+                eventPublisher, new VehicleWriteLanes(transactionManager, null, 4, false), 2);
+
+        user = new User();
+        user.setEmail("test@example.com");
+        user.setPassword("secret");
+        entityManager.persist(user);
+
+        User other = new User();
+        other.setEmail("other@example.com");
+        other.setPassword("secret");
+        entityManager.persist(other);
+
+        car = createVehicle(user, "ABC-123", 9000.0);
+        otherCar = createVehicle(other, "XYZ-789", null);
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private Vehicle createVehicle(User owner, String licensePlate, Double initialOdometer) {
+        Vehicle vehicle = new Vehicle();
+        vehicle.setMake("Toyota");
+        vehicle.setModel("Corolla");
+        vehicle.setFuelType("Gasoline");
+        vehicle.setManufacturingYear(2015);
+        vehicle.setLicensePlate(licensePlate);
+        vehicle.setTankCapacityLiters(50.0);
+        vehicle.setInitialOdometer(initialOdometer);
+        vehicle.setUser(owner);
+        entityManager.persist(vehicle);
+        return vehicle;
+    }
+
+    private FuelEntryImportResultDTO importCsv(String csv) throws Exception {
+        return importService.importCsv(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), user.getId());
+    }
+
+    // Test 1: Valid rows are imported and each invalid row is reported with its line
+    @Test
+    void testImportReportsInvalidRows() throws Exception {
+        // Arrange
+        String csv = "vehicle_id,date_time,litres,odometer,price_per_litre,total_price,location\n" +
+                car.getId() + ",2024-01-10T08:00,40,10000,2.0,80.0,\"Neste, Helsinki\"\n" +
+                car.getId() + ",2024-02-10T08:00,-5,10600,2.0,,\n" +
+                otherCar.getId() + ",2024-02-11T08:00,30,7000,2.0,,\n" +
+                car.getId() + ",not a date,30,11000,2.0,,\n" +
+                car.getId() + ",2024-01-01T08:00,35,9500,2.0,,\n" +
+                car.getId() + ",2024-03-10 08:00,38,11200,2.0,,\n";
+
+        // Act
+        FuelEntryImportResultDTO result = importCsv(csv);
+
+        // Assert
+        assertEquals(6, result.rowCount());
+        assertEquals(3, result.importedCount());
+        assertEquals(List.of(3L, 4L, 5L), result.errors().stream().map(FuelEntryImportResultDTO.RowError::line).toList());
+        assertEquals("litres must be positive", result.errors().get(0).message());
+        assertEquals("Unknown vehicle " + otherCar.getId(), result.errors().get(1).message());
+
+        List<FuelEntry> entries = fuelEntryRepository.findByVehicleIdOrderByDateTimeAscIdAsc(car.getId());
+        assertEquals(3, entries.size());
+        assertEquals("Neste, Helsinki", entries.get(1).getLocation());
+        assertEquals(70.0, entries.get(0).getTotalPrice());
+        verify(eventPublisher, times(1)).publishEvent(
+                new FuelEntryChangedEvent(user.getId(), car.getId(), LocalDateTime.of(2024, 1, 1, 8, 0)));
+
+        System.out.println("✅ FuelEntryImportService - Imports valid rows and reports the rest");
+    }
+
+    // Test 2: Trip distances build on the previous entry, imported or existing
+    @Test
+    void testTripDistancesResolveAgainstHistory() throws Exception {
+        // Arrange
+        FuelEntry existing = new FuelEntry();
+        existing.setUser(entityManager.getReference(User.class, user.getId()));
+        existing.setVehicle(entityManager.getReference(Vehicle.class, car.getId()));
+        existing.setDateTime(LocalDateTime.of(2024, 2, 1, 8, 0));
+        existing.setLitres(40.0);
+        existing.setOdometer(20000.0);
+        existing.setPricePerLitre(2.0);
+        existing.setTotalPrice(80.0);
+        entityManager.persist(existing);
+        entityManager.flush();
+        entityManager.clear();
+
+        String csv = "vehicle_id,date_time,litres,odometer,trip_distance,price_per_litre\n" +
+                car.getId() + ",2024-02-20T08:00,40,,500,2.0\n" +
+                car.getId() + ",2024-01-05T08:00,40,,400,2.0\n" +
+                car.getId() + ",2024-02-10T08:00,40,,300,2.0\n" +
+                car.getId() + ",2024-01-20T08:00,40,9800,,2.0\n";
+
+        // Act
+        FuelEntryImportResultDTO result = importCsv(csv);
+
+        // Assert
+        assertEquals(4, result.importedCount());
+        List<Double> odometers = fuelEntryRepository.findByVehicleIdOrderByDateTimeAscIdAsc(car.getId()).stream()
+                .map(FuelEntry::getOdometer)
+                .toList();
+        // initial 9000 + 400, given 9800, existing 20000, + 300, + 500
+        assertEquals(List.of(9400.0, 9800.0, 20000.0, 20300.0, 20800.0), odometers);
+
+        System.out.println("✅ FuelEntryImportService - Resolves trip distances in history order");
+    }
+}
@@ -0,0 +1,181 @@
+package fi.laalo.fueltracker;
+
+import fi.laalo.fueltracker.dto.FuelEntryPageDTO;
+import fi.laalo.fueltracker.dto.FuelEntryResponseDTO;
+import fi.laalo.fueltracker.mapper.FuelEntryMapper;
+import fi.laalo.fueltracker.model.FuelEntry;
+import fi.laalo.fueltracker.model.Vehicle;
+import fi.laalo.fueltracker.repository.FuelEntryRepository;
+import fi.laalo.fueltracker.service.FuelEntryService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+public class FuelEntryPaginationTest {
+
+    private static final Comparator<FuelEntry> ORDER =
+            Comparator.comparing(FuelEntry::getDateTime).thenComparing(FuelEntry::getId);
+
+    @Mock
+    private FuelEntryRepository repository;
+
+    @InjectMocks
+    private FuelEntryService fuelEntryService;
+
+    private final List<FuelEntry> entries = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        Vehicle vehicle = new Vehicle();
+        vehicle.setId(1L);
+
+        // 23 entries, with several sharing the same timestamp so the id tie-breaker matters
+        LocalDateTime dateTime = LocalDateTime.of(2024, 1, 1, 8, 0);
+        for (long id = 1; id <= 23; id++) {
+            FuelEntry entry = new FuelEntry();
+            entry.setId(id);
+            entry.setVehicle(vehicle);
+            entry.setDateTime(dateTime);
+            entry.setLitres(40.0);
+            entry.setOdometer(10000.0 + id * 500);
+            entry.setPricePerLitre(1.8);
+            entry.setTotalPrice(72.0);
+            entries.add(entry);
+            if (id % 3 != 0) {
+                dateTime = dateTime.plusDays(5);
+            }
+        }
+
+        // Repository answers behave like the keyset queries
+        lenient().when(repository.findFirstPage(eq(1L), any()))
+                .thenAnswer(invocation -> pageAfter(null, null, null, null, invocation.getArgument(1)));
+        lenient().when(repository.findPageAfter(eq(1L), any(), any(), any()))
+                .thenAnswer(invocation -> pageAfter(null, null, invocation.getArgument(1), invocation.getArgument(2), invocation.getArgument(3)));
+        lenient().when(repository.findPageBefore(eq(1L), any(), any(), any()))
+                .thenAnswer(invocation -> pageBefore(null, null, invocation.getArgument(1), invocation.getArgument(2), invocation.getArgument(3)));
+        lenient().when(repository.findFirstPageInRange(eq(1L), any(), any(), any()))
+                .thenAnswer(invocation -> pageAfter(invocation.getArgument(1), invocation.getArgument(2), null, null, invocation.getArgument(3)));
+        lenient().when(repository.findPageAfterInRange(eq(1L), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> pageAfter(invocation.getArgument(1), invocation.getArgument(2),
+                        invocation.getArgument(3), invocation.getArgument(4), invocation.getArgument(5)));
+        lenient().when(repository.findPageBeforeInRange(eq(1L), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> pageBefore(invocation.getArgument(1), invocation.getArgument(2),
+                        invocation.getArgument(3), invocation.getArgument(4), invocation.getArgument(5)));
+    }
+
+    private List<FuelEntryResponseDTO> pageAfter(LocalDateTime from, LocalDateTime to, LocalDateTime afterDate, Long afterId, Limit limit) {
+        return entries.stream()
+                .filter(e -> inRange(e, from, to))
+                .filter(e -> afterDate == null || ORDER.compare(e, probe(afterDate, afterId)) > 0)
+                .sorted(ORDER)
+                .limit(limit.max())
+                .map(FuelEntryMapper::toDto)
+                .toList();
+    }
+
+    private List<FuelEntryResponseDTO> pageBefore(LocalDateTime from, LocalDateTime to, LocalDateTime beforeDate, Long beforeId, Limit limit) {
+        return entries.stream()
+                .filter(e -> inRange(e, from, to))
+                .filter(e -> ORDER.compare(e, probe(beforeDate, beforeId)) < 0)
+                .sorted(ORDER.reversed())
+                .limit(limit.max())
+                .map(FuelEntryMapper::toDto)
+                .toList();
+    }
+
+    private static boolean inRange(FuelEntry entry, LocalDateTime from, LocalDateTime to) {
+        return (from == null || !entry.getDateTime().isBefore(from)) && (to == null || entry.getDateTime().isBefore(to));
+    }
+
+    private static FuelEntry probe(LocalDateTime dateTime, Long id) {
+        FuelEntry entry = new FuelEntry();
+        entry.setDateTime(dateTime);
+        entry.setId(id);
+        return entry;
+    }
+
+    private static List<Long> ids(FuelEntryPageDTO page) {
+        return page.entries().stream().map(FuelEntryResponseDTO::id).toList();
+    }
+
+    // Test 1: Walking forward and then backward visits every entry once, in order
+    @Test
+    void testWalkForwardAndBackward() {
+        // Act: forward
+        List<List<Long>> forwardPages = new ArrayList<>();
+        FuelEntryPageDTO page = fuelEntryService.getPageByVehicle(1L, null, null, null, null, 5);
+        assertNull(page.previousCursor());
+        forwardPages.add(ids(page));
+        while (page.nextCursor() != null) {
+            page = fuelEntryService.getPageByVehicle(1L, null, null, page.nextCursor(), null, 5);
+            forwardPages.add(ids(page));
+        }
+
+        // Assert: every entry once, in (dateTime, id) order
+        List<Long> expected = entries.stream().sorted(ORDER).map(FuelEntry::getId).toList();
+        assertEquals(expected, forwardPages.stream().flatMap(List::stream).toList());
+        assertEquals(5, forwardPages.size());
+
+        // Act: backward from the last page gives the same pages in reverse
+        List<List<Long>> backwardPages = new ArrayList<>();
+        while (page.previousCursor() != null) {
+            page = fuelEntryService.getPageByVehicle(1L, null, null, null, page.previousCursor(), 5);
+            backwardPages.add(0, ids(page));
+        }
+        assertEquals(forwardPages.subList(0, forwardPages.size() - 1), backwardPages);
+        assertNull(page.previousCursor());
+
+        System.out.println("✅ Pagination - Forward and backward cursors cover all entries");
+    }
+
+    // Test 2: Date range limits the pages to [from, to)
+    @Test
+    void testDateRange() {
+        // Arrange
+        LocalDateTime from = entries.get(3).getDateTime();
+        LocalDateTime to = entries.get(15).getDateTime();
+
+        // Act
+        FuelEntryPageDTO page = fuelEntryService.getPageByVehicle(1L, from, to, null, null, 100);
+
+        // Assert
+        List<Long> expected = entries.stream()
+                .filter(e -> inRange(e, from, to))
+                .map(FuelEntry::getId)
+                .toList();
+        assertEquals(expected, ids(page));
+        assertNull(page.nextCursor());
+
+        System.out.println("✅ Pagination - Date range is applied");
+    }
+
+    // Test 3: Bad cursors and page sizes are rejected
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class,
+                () -> fuelEntryService.getPageByVehicle(1L, null, null, "not-a-cursor", null, 5));
+        assertThrows(IllegalArgumentException.class,
+                () -> fuelEntryService.getPageByVehicle(1L, null, null, null, null, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> fuelEntryService.getPageByVehicle(1L, null, null, "a", "b", 5));
+
+        System.out.println("✅ Pagination - Rejects invalid cursors and page sizes");
+    }
+}
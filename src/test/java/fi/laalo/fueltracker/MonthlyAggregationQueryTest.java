@@ -0,0 +1,192 @@
+package fi.laalo.fueltracker;
+
+import fi.laalo.fueltracker.model.ConsumptionCycle;
+import fi.laalo.fueltracker.model.FuelEntry;
+import fi.laalo.fueltracker.model.MonthlyRollup;
+import fi.laalo.fueltracker.model.User;
+import fi.laalo.fueltracker.model.Vehicle;
+import fi.laalo.fueltracker.repository.ConsumptionCycleRepository;
+import fi.laalo.fueltracker.repository.FuelEntryRepository;
+import fi.laalo.fueltracker.repository.MonthlyRollupRepository;
+import fi.laalo.fueltracker.repository.VehicleRepository;
+import fi.laalo.fueltracker.service.ConsumptionCalculator;
+import fi.laalo.fueltracker.service.FuelAnalyticsService.MonthlyStatistics;
+import fi.laalo.fueltracker.service.MonthlyRollupService;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The monthly aggregate queries against the in-memory calculation, on an in-memory database.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+public class MonthlyAggregationQueryTest {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private FuelEntryRepository fuelEntryRepository;
+
+    @Autowired
+    private ConsumptionCycleRepository cycleRepository;
+
+    @Autowired
+    private MonthlyRollupRepository rollupRepository;
+
+    @Autowired
+    private VehicleRepository vehicleRepository;
+
+    private Vehicle vehicle;
+    private final List<FuelEntry> entries = new ArrayList<>();
+    private final List<ConsumptionCycle> cycles = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setEmail("test@example.com");
+        user.setPassword("secret");
+        entityManager.persist(user);
+
+        vehicle = new Vehicle();
+        vehicle.setMake("Toyota");
+        vehicle.setModel("Corolla");
+        vehicle.setFuelType("Gasoline");
+        vehicle.setManufacturingYear(2015);
+        vehicle.setLicensePlate("ABC-123");
+        vehicle.setTankCapacityLiters(50.0);
+        vehicle.setUser(user);
+        entityManager.persist(vehicle);
+
+        // Partial and full fills with some bad odometer readings and shared timestamps
+        Random random = new Random(7);
+        LocalDateTime dateTime = LocalDateTime.of(2023, 11, 20, 8, 0);
+        double odometer = 20000.0;
+        for (int i = 0; i < 60; i++) {
+            odometer += 150 + random.nextInt(500);
+            if (random.nextInt(6) != 0) {
+                dateTime = dateTime.plusDays(1 + random.nextInt(12));
+            }
+            FuelEntry entry = new FuelEntry();
+            entry.setUser(user);
+            entry.setVehicle(vehicle);
+            entry.setDateTime(dateTime);
+            entry.setLitres(random.nextInt(4) == 0 ? 15.0 : 40.0 + random.nextInt(10));
+            entry.setOdometer(random.nextInt(10) == 0 ? odometer - 3000 : odometer);
+            entry.setPricePerLitre(1.75 + random.nextInt(30) / 100.0);
+            entry.setTotalPrice(entry.getLitres() * entry.getPricePerLitre());
+            entityManager.persist(entry);
+            entries.add(entry);
+        }
+
+        // A month with only bad readings, followed by a month with a good one
+        LocalDateTime invalidMonth = dateTime.plusMonths(2).withDayOfMonth(10);
+        for (LocalDateTime at : List.of(invalidMonth, invalidMonth.plusDays(8), invalidMonth.plusMonths(1))) {
+            FuelEntry entry = new FuelEntry();
+            entry.setUser(user);
+            entry.setVehicle(vehicle);
+            entry.setDateTime(at);
+            entry.setLitres(45.0);
+            entry.setOdometer(at.getMonth() == invalidMonth.getMonth() ? odometer - 5000 : odometer + 600);
+            entry.setPricePerLitre(1.85);
+            entry.setTotalPrice(45.0 * 1.85);
+            entityManager.persist(entry);
+            entries.add(entry);
+        }
+
+        for (ConsumptionCalculator.Cycle cycle : ConsumptionCalculator.calculateCycles(
+                ConsumptionCalculator.getValidEntries(entries), vehicle.getTankCapacityLiters())) {
+            ConsumptionCycle entity = new ConsumptionCycle();
+            entity.setVehicle(vehicle);
+            entity.setEndEntryId(cycle.endEntryId());
+            entity.setFromOdometer(cycle.fromOdometer());
+            entity.setToOdometer(cycle.toOdometer());
+            entity.setFromDate(cycle.fromDate());
+            entity.setToDate(cycle.toDate());
+            entity.setDistanceKm(cycle.distance());
+            entity.setLitres(cycle.fuelConsumed());
+            entity.setConsumptionPer100km(cycle.consumption());
+            entityManager.persist(entity);
+            cycles.add(entity);
+        }
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private List<String> snapshot(List<MonthlyRollup> rollups) {
+        return rollups.stream()
+                .map(r -> String.format("%s %d %.6f %.6f %.6f %d %.6f", r.getMonthStart(), r.getEntryCount(),
+                        r.getTotalLitres(), r.getTotalCost(), r.getPricePerLitreSum(), r.getCycleCount(), r.getConsumptionSum()))
+                .toList();
+    }
+
+    // Test 1: Database aggregation gives the same monthly rows as the in-memory calculation
+    @Test
+    void testAggregatesMatchInMemoryRollups() {
+        // Arrange
+        List<MonthlyRollup> expected = MonthlyRollupService.buildRollups(vehicle, entries, cycles);
+
+        // Act
+        List<MonthlyRollup> actual = MonthlyRollupService.mergeMonthlyTotals(vehicle,
+                fuelEntryRepository.sumValidEntriesByMonth(vehicle.getId(), null),
+                cycleRepository.sumByMonth(vehicle.getId(), null));
+
+        // Assert
+        assertEquals(snapshot(expected), snapshot(actual));
+
+        System.out.println("✅ Monthly aggregation - Database totals match the in-memory rollups");
+    }
+
+    // Test 2: Starting from a month still judges validity against the earlier history
+    @Test
+    void testAggregatesFromMonthKeepEarlierValidity() {
+        // Arrange
+        LocalDateTime from = LocalDateTime.of(2024, 4, 1, 0, 0);
+        List<MonthlyRollup> expected = MonthlyRollupService.buildRollups(vehicle, entries, cycles, from);
+
+        // Act
+        List<MonthlyRollup> actual = MonthlyRollupService.mergeMonthlyTotals(vehicle,
+                fuelEntryRepository.sumValidEntriesByMonth(vehicle.getId(), from),
+                cycleRepository.sumByMonth(vehicle.getId(), from));
+
+        // Assert
+        assertEquals(snapshot(expected), snapshot(actual));
+
+        System.out.println("✅ Monthly aggregation - Partial range uses validity from the full history");
+    }
+
+    // Test 3: All-months statistics match the single-month statistics, including a month without valid entries
+    @Test
+    void testAllMonthlyStatisticsMatchPerMonthStatistics() {
+        // Arrange
+        MonthlyRollupService rollupService = new MonthlyRollupService(rollupRepository, fuelEntryRepository, cycleRepository, vehicleRepository);
+        rollupService.recalculateFrom(vehicle.getId(), null);
+        YearMonth invalidMonth = YearMonth.from(entries.get(entries.size() - 2).getDateTime());
+
+        // Act
+        Map<YearMonth, MonthlyStatistics> all = rollupService.getAllMonthlyStatistics(vehicle.getUser().getId());
+
+        // Assert
+        assertEquals(entries.stream().map(e -> YearMonth.from(e.getDateTime())).collect(Collectors.toSet()), all.keySet());
+        assertEquals(new MonthlyStatistics(invalidMonth, 0, 0.0, 0.0, 0.0, 0.0), all.get(invalidMonth));
+        for (Map.Entry<YearMonth, MonthlyStatistics> month : all.entrySet()) {
+            MonthlyStatistics single = rollupService.getMonthlyStatistics(vehicle.getUser().getId(), month.getKey());
+            assertEquals(single, month.getValue(), "Statistics differ for " + month.getKey());
+        }
+
+        System.out.println("✅ Monthly aggregation - All-months statistics match per-month statistics");
+    }
+}
@@ -0,0 +1,194 @@
+package fi.laalo.fueltracker;
+
+import fi.laalo.fueltracker.model.ConsumptionCycle;
+import fi.laalo.fueltracker.model.FuelEntry;
+import fi.laalo.fueltracker.model.MonthlyRollup;
+import fi.laalo.fueltracker.model.User;
+import fi.laalo.fueltracker.model.Vehicle;
+import fi.laalo.fueltracker.repository.ConsumptionCycleRepository;
+import fi.laalo.fueltracker.repository.FuelEntryRepository;
+import fi.laalo.fueltracker.repository.MonthlyRollupRepository;
+import fi.laalo.fueltracker.repository.VehicleRepository;
+import fi.laalo.fueltracker.service.ConsumptionCalculator;
+import fi.laalo.fueltracker.service.MonthlyRollupService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MonthlyRollupServiceTest {
+
+    private MonthlyRollupService rollupService;
+
+    private User user;
+    private Vehicle car;
+    private final List<FuelEntry> entries = new ArrayList<>();
+    private final List<MonthlyRollup> storedRollups = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        MonthlyRollupRepository rollupRepository = mock(MonthlyRollupRepository.class);
+        FuelEntryRepository fuelEntryRepository = mock(FuelEntryRepository.class);
+        ConsumptionCycleRepository cycleRepository = mock(ConsumptionCycleRepository.class);
+        VehicleRepository vehicleRepository = mock(VehicleRepository.class);
+        rollupService = new MonthlyRollupService(rollupRepository, fuelEntryRepository, cycleRepository, vehicleRepository);
+
+        user = new User();
+        user.setId(1L);
+        car = new Vehicle();
+        car.setId(1L);
+        car.setTankCapacityLiters(50.0);
+        car.setUser(user);
+
+        // Partial and full fills over several months, with two bad odometer readings
+        LocalDateTime dateTime = LocalDateTime.of(2024, 1, 3, 9, 0);
+        double[][] fills = {
+                {30, 10000}, {25, 10400}, {40, 10950}, {38, 9000}, {42, 11500}, {12, 11600},
+                {45, 12100}, {44, 12700}, {20, 12000}, {47, 13300}, {43, 13900}, {46, 14450}
+        };
+        for (double[] fill : fills) {
+            addEntry(dateTime, fill[0], fill[1]);
+            dateTime = dateTime.plusDays(17);
+        }
+
+        when(vehicleRepository.findById(1L)).thenReturn(Optional.of(car));
+
+        // In-memory rollup table
+        doAnswer(invocation -> storedRollups.removeIf(r -> true))
+                .when(rollupRepository).deleteByVehicleId(1L);
+        doAnswer(invocation -> {
+            LocalDate fromMonth = invocation.getArgument(1);
+            return storedRollups.removeIf(r -> !r.getMonthStart().isBefore(fromMonth));
+        }).when(rollupRepository).deleteByVehicleIdFrom(eq(1L), any());
+        when(rollupRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<MonthlyRollup> rollups = invocation.getArgument(0);
+            storedRollups.addAll(rollups);
+            return rollups;
+        });
+
+        // Database aggregates computed from the list above with the in-memory reference
+        when(fuelEntryRepository.sumValidEntriesByMonth(eq(1L), any())).thenAnswer(invocation -> {
+            LocalDateTime from = invocation.getArgument(1);
+            return referenceRollups(from).stream()
+                    .map(MonthlyRollupServiceTest::entryTotals)
+                    .toList();
+        });
+        when(cycleRepository.sumByMonth(eq(1L), any())).thenAnswer(invocation -> {
+            LocalDateTime from = invocation.getArgument(1);
+            return referenceRollups(from).stream()
+                    .filter(r -> r.getCycleCount() > 0)
+                    .map(MonthlyRollupServiceTest::cycleTotals)
+                    .toList();
+        });
+    }
+
+    // Validity is decided over the whole history, then months before the start are left out
+    private List<MonthlyRollup> referenceRollups(LocalDateTime from) {
+        return MonthlyRollupService.buildRollups(car, entries, calculateCycles(), from);
+    }
+
+    private static FuelEntryRepository.MonthlyEntryTotals entryTotals(MonthlyRollup rollup) {
+        return new FuelEntryRepository.MonthlyEntryTotals() {
+            public LocalDate getMonthStart() { return rollup.getMonthStart(); }
+            public Long getEntryCount() { return (long) rollup.getEntryCount(); }
+            public Double getTotalLitres() { return rollup.getTotalLitres(); }
+            public Double getTotalCost() { return rollup.getTotalCost(); }
+            public Double getPricePerLitreSum() { return rollup.getPricePerLitreSum(); }
+        };
+    }
+
+    private static ConsumptionCycleRepository.MonthlyCycleTotals cycleTotals(MonthlyRollup rollup) {
+        return new ConsumptionCycleRepository.MonthlyCycleTotals() {
+            public LocalDate getMonthStart() { return rollup.getMonthStart(); }
+            public Long getCycleCount() { return (long) rollup.getCycleCount(); }
+            public Double getConsumptionSum() { return rollup.getConsumptionSum(); }
+        };
+    }
+
+    private void addEntry(LocalDateTime dateTime, double litres, double odometer) {
+        FuelEntry entry = new FuelEntry();
+        entry.setId((long) entries.size() + 1);
+        entry.setUser(user);
+        entry.setVehicle(car);
+        entry.setDateTime(dateTime);
+        entry.setLitres(litres);
+        entry.setOdometer(odometer);
+        entry.setPricePerLitre(1.80 + entries.size() * 0.01);
+        entry.setTotalPrice(litres * entry.getPricePerLitre());
+        entries.add(entry);
+    }
+
+    private List<ConsumptionCycle> calculateCycles() {
+        return ConsumptionCalculator.calculateCycles(ConsumptionCalculator.getValidEntries(entries), car.getTankCapacityLiters())
+                .stream()
+                .map(cycle -> {
+                    ConsumptionCycle entity = new ConsumptionCycle();
+                    entity.setToDate(cycle.toDate());
+                    entity.setConsumptionPer100km(cycle.consumption());
+                    return entity;
+                })
+                .toList();
+    }
+
+    private List<String> snapshot() {
+        return storedRollups.stream()
+                .sorted(Comparator.comparing(MonthlyRollup::getMonthStart))
+                .map(r -> r.getMonthStart() + " " + r.getEntryCount() + " " + r.getTotalLitres() + " " + r.getTotalCost()
+                        + " " + r.getPricePerLitreSum() + " " + r.getCycleCount() + " " + r.getConsumptionSum())
+                .toList();
+    }
+
+    // Test 1: Rollups contain only valid entries and the cycles ending in each month
+    @Test
+    void testBuildRollups() {
+        // Act
+        rollupService.recalculateFrom(1L, null);
+
+        // Assert
+        List<FuelEntry> valid = ConsumptionCalculator.getValidEntries(entries);
+        assertEquals(valid.size(), storedRollups.stream().mapToInt(MonthlyRollup::getEntryCount).sum());
+        assertEquals(calculateCycles().size(), storedRollups.stream().mapToInt(MonthlyRollup::getCycleCount).sum());
+        for (MonthlyRollup rollup : storedRollups) {
+            YearMonth month = YearMonth.from(rollup.getMonthStart());
+            double litres = valid.stream()
+                    .filter(e -> YearMonth.from(e.getDateTime()).equals(month))
+                    .mapToDouble(FuelEntry::getLitres)
+                    .sum();
+            assertEquals(litres, rollup.getTotalLitres(), 1e-9);
+        }
+
+        System.out.println("✅ MonthlyRollupService - Builds rollups from valid entries and cycles");
+    }
+
+    // Test 2: Recalculating from any month gives the same rows as a full rebuild
+    @Test
+    void testRecalculateFromMonthMatchesFullRebuild() {
+        // Arrange
+        rollupService.recalculateFrom(1L, null);
+        List<String> full = snapshot();
+
+        for (FuelEntry entry : entries) {
+            // Act
+            rollupService.recalculateFrom(1L, YearMonth.from(entry.getDateTime()));
+
+            // Assert
+            assertEquals(full, snapshot(), "Recalculated from " + YearMonth.from(entry.getDateTime()));
+        }
+
+        System.out.println("✅ MonthlyRollupService - Incremental recalculation matches full rebuild");
+    }
+}
@@ -0,0 +1,227 @@
+package fi.laalo.fueltracker;
+
+import fi.laalo.fueltracker.dto.FuelEntryResponseDTO;
+import fi.laalo.fueltracker.dto.VehicleResponseDTO;
+import fi.laalo.fueltracker.mapper.FuelEntryMapper;
+import fi.laalo.fueltracker.mapper.VehicleMapper;
+import fi.laalo.fueltracker.model.FuelEntry;
+import fi.laalo.fueltracker.model.User;
+import fi.laalo.fueltracker.model.Vehicle;
+import fi.laalo.fueltracker.repository.FuelEntryRepository;
+import fi.laalo.fueltracker.repository.VehicleRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.jdbc.Sql;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Counts the SQL statements behind the read paths, on an in-memory database.
+ * The odometer column is made nullable for the class, as it is in databases created before it was required.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Sql(statements = "ALTER TABLE fuel_entries ALTER COLUMN odometer SET NULL", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_CLASS)
+@Sql(statements = "ALTER TABLE fuel_entries ALTER COLUMN odometer SET NOT NULL", executionPhase = Sql.ExecutionPhase.AFTER_TEST_CLASS)
+public class QueryCountTest {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private FuelEntryRepository fuelEntryRepository;
+
+    @Autowired
+    private VehicleRepository vehicleRepository;
+
+    private Statistics statistics;
+    private User user;
+    private Vehicle vehicle;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setEmail("test@example.com");
+        user.setPassword("secret");
+        entityManager.persist(user);
+
+        for (int v = 0; v < 2; v++) {
+            Vehicle created = new Vehicle();
+            created.setMake("Toyota");
+            created.setModel("Corolla");
+            created.setFuelType("Gasoline");
+            created.setManufacturingYear(2015);
+            created.setLicensePlate("ABC-12" + v);
+            created.setTankCapacityLiters(50.0);
+            created.setUser(user);
+            entityManager.persist(created);
+            vehicle = created;
+
+            for (int i = 0; i < 10; i++) {
+                FuelEntry entry = new FuelEntry();
+                entry.setUser(user);
+                entry.setVehicle(created);
+                entry.setDateTime(LocalDateTime.of(2024, 1, 1, 8, 0).plusDays(i * 7L));
+                entry.setLitres(40.0);
+                entry.setOdometer(10000.0 + i * 500);
+                entry.setPricePerLitre(1.8);
+                entry.setTotalPrice(72.0);
+                entityManager.persist(entry);
+            }
+        }
+
+        // Start each test from an empty persistence context
+        entityManager.flush();
+        entityManager.clear();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    // Test 1: Listing a vehicle's entries and mapping them is one statement
+    @Test
+    void testEntryListingIsOneQuery() {
+        // Act
+        List<FuelEntryResponseDTO> dtos = fuelEntryRepository.findByVehicleIdOrderByDateTimeAscIdAsc(vehicle.getId())
+                .stream()
+                .map(FuelEntryMapper::toDto)
+                .toList();
+
+        // Assert
+        assertEquals(10, dtos.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        System.out.println("✅ Query count - Entry listing runs one statement");
+    }
+
+    // Test 2: Each page of entries is one statement
+    @Test
+    void testEntryPageIsOneQuery() {
+        // Act
+        List<FuelEntryResponseDTO> dtos = fuelEntryRepository.findFirstPage(vehicle.getId(), Limit.of(6));
+        FuelEntryResponseDTO last = dtos.get(dtos.size() - 1);
+        List<FuelEntryResponseDTO> next = fuelEntryRepository.findPageAfter(vehicle.getId(), last.dateTime(), last.id(), Limit.of(6));
+
+        // Assert
+        assertEquals(6, dtos.size());
+        assertEquals(4, next.size());
+        assertEquals(last.dateTime().plusDays(7), next.get(0).dateTime());
+        assertEquals(2, statistics.getPrepareStatementCount());
+
+        System.out.println("✅ Query count - Each entry page runs one statement");
+    }
+
+    // Test 3: Listing vehicles and the ownership-checked lookups are one statement each
+    @Test
+    void testVehicleListingAndOwnershipLookups() {
+        // Act
+        List<VehicleResponseDTO> vehicles = vehicleRepository.findByUserId(user.getId())
+                .stream()
+                .map(VehicleMapper::toDto)
+                .toList();
+
+        // Assert
+        assertEquals(2, vehicles.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        // Act
+        entityManager.clear();
+        statistics.clear();
+        Long entryId = fuelEntryRepository.findByVehicleIdOrderByDateTimeAscIdAsc(vehicle.getId()).get(0).getId();
+        entityManager.clear();
+        statistics.clear();
+        FuelEntryResponseDTO entry = fuelEntryRepository.findByIdAndUserId(entryId, user.getId())
+                .map(FuelEntryMapper::toDto)
+                .orElseThrow();
+        VehicleResponseDTO owned = vehicleRepository.findByIdAndUserId(vehicle.getId(), user.getId())
+                .map(VehicleMapper::toDto)
+                .orElseThrow();
+
+        // Assert
+        assertEquals(vehicle.getId(), entry.vehicleId());
+        assertEquals(vehicle.getId(), owned.id());
+        assertEquals(2, statistics.getPrepareStatementCount());
+
+        System.out.println("✅ Query count - Vehicle listing and ownership lookups run one statement each");
+    }
+
+    // Test 4: DTO and cycle input projections run one statement each and load no entities
+    @Test
+    void testProjectionsLoadNoEntities() {
+        // Act
+        List<FuelEntryResponseDTO> entries = fuelEntryRepository.findDtosByVehicleId(vehicle.getId());
+        FuelEntryResponseDTO entry = fuelEntryRepository.findDtoByIdAndUserId(entries.get(0).id(), user.getId()).orElseThrow();
+        List<VehicleResponseDTO> vehicles = vehicleRepository.findDtosByUserId(user.getId());
+        VehicleResponseDTO owned = vehicleRepository.findDtoByIdAndUserId(vehicle.getId(), user.getId()).orElseThrow();
+        List<FuelEntryRepository.CycleInput> cycleInputs = fuelEntryRepository.findCycleInputs(vehicle.getId());
+
+        // Assert
+        assertEquals(10, entries.size());
+        assertEquals(vehicle.getId(), entry.vehicleId());
+        assertEquals(2, vehicles.size());
+        assertEquals("Corolla", owned.model());
+        assertEquals(10, cycleInputs.size());
+        assertEquals(entries.get(9).odometer(), cycleInputs.get(9).odometer());
+        assertEquals(5, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(0, entityManager.unwrap(Session.class).getStatistics().getEntityCount());
+
+        System.out.println("✅ Query count - Projections load no entities");
+    }
+
+    // Test 5: The latest odometer for trip entries is one single-row statement
+    @Test
+    void testLatestOdometerIsOneRow() {
+        // Act
+        List<Double> latest = fuelEntryRepository.findLatestOdometers(vehicle.getId(), Limit.of(1));
+        Long latestId = fuelEntryRepository.findPageBefore(vehicle.getId(),
+                LocalDateTime.of(2100, 1, 1, 0, 0), Long.MAX_VALUE, Limit.of(1)).get(0).id();
+        List<Double> previous = fuelEntryRepository.findLatestOdometersExcluding(vehicle.getId(), latestId, Limit.of(1));
+
+        // Assert
+        assertEquals(List.of(14500.0), latest);
+        assertEquals(List.of(14000.0), previous);
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+
+        System.out.println("✅ Query count - Latest odometer reads a single row");
+    }
+
+    // Test 6: Entries without an odometer are skipped when looking up the latest odometer
+    @Test
+    void testLatestOdometerSkipsEntriesWithoutOdometer() {
+        // Arrange: the two latest entries lost their odometer
+        List<FuelEntryResponseDTO> newest = fuelEntryRepository.findPageBefore(vehicle.getId(),
+                LocalDateTime.of(2100, 1, 1, 0, 0), Long.MAX_VALUE, Limit.of(3));
+        for (FuelEntryResponseDTO entry : newest.subList(0, 2)) {
+            entityManager.createNativeQuery("UPDATE fuel_entries SET odometer = NULL WHERE id = ?1")
+                    .setParameter(1, entry.id())
+                    .executeUpdate();
+        }
+
+        // Act
+        List<Double> latest = fuelEntryRepository.findLatestOdometers(vehicle.getId(), Limit.of(1));
+        List<Double> previous = fuelEntryRepository.findLatestOdometersExcluding(vehicle.getId(), newest.get(2).id(), Limit.of(1));
+
+        // Assert
+        assertEquals(List.of(13500.0), latest);
+        assertEquals(List.of(13000.0), previous);
+
+        System.out.println("✅ Query count - Latest odometer skips entries without one");
+    }
+}
@@ -0,0 +1,110 @@
+package fi.laalo.fueltracker;
+
+import fi.laalo.fueltracker.config.SqlStatementCounter;
+import fi.laalo.fueltracker.config.SqlStatementMetricsFilter;
+import fi.laalo.fueltracker.config.TimedPasswordEncoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.web.servlet.HandlerMapping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SQL statements per request and password hashing time.
+ */
+public class RequestMetricsTest {
+
+    private final SqlStatementCounter inspector = new SqlStatementCounter();
+    private SimpleMeterRegistry meterRegistry;
+    private SqlStatementMetricsFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        filter = new SqlStatementMetricsFilter(meterRegistry);
+    }
+
+    private MockHttpServletRequest request(String uriTemplate) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uriTemplate.replace("{vehicleId}", "7"));
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, uriTemplate);
+        return request;
+    }
+
+    private double statementsRecorded(String uri) {
+        return meterRegistry.get("fueltracker.http.sql.statements").tag("uri", uri).summary().totalAmount();
+    }
+
+    // Test 1: Statements prepared during the request are recorded under its URI template
+    @Test
+    void testStatementsCountedPerRequest() throws Exception {
+        // Arrange
+        MockHttpServletRequest request = request("/api/vehicles/{vehicleId}");
+
+        // Act
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            inspector.inspect("select 1");
+            inspector.inspect("select 2");
+        });
+        inspector.inspect("select outside a request");
+
+        // Assert
+        assertEquals(2.0, statementsRecorded("/api/vehicles/{vehicleId}"));
+        assertNull(SqlStatementCounter.current());
+
+        System.out.println("✅ Request metrics - Counts the statements of a request");
+    }
+
+    // Test 2: An async request is recorded on completion, including statements run on other threads
+    @Test
+    void testAsyncRequestRecordedOnCompletion() throws Exception {
+        // Arrange
+        MockHttpServletRequest request = request("/api/analytics/vehicles/{vehicleId}/history");
+        request.setAsyncSupported(true);
+
+        // Act
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            req.startAsync();
+            var statements = SqlStatementCounter.current();
+            Thread worker = new Thread(() -> SqlStatementCounter.bind(statements, () -> inspector.inspect("select 1")));
+            worker.start();
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        boolean recordedBeforeCompletion = meterRegistry.find("fueltracker.http.sql.statements").summary() != null;
+        request.getAsyncContext().complete();
+
+        // Assert
+        assertFalse(recordedBeforeCompletion);
+        assertEquals(1.0, statementsRecorded("/api/analytics/vehicles/{vehicleId}/history"));
+
+        System.out.println("✅ Request metrics - Records async requests when they complete");
+    }
+
+    // Test 3: Password checks are timed and still verify correctly
+    @Test
+    void testPasswordHashingTimed() {
+        // Arrange
+        TimedPasswordEncoder encoder = new TimedPasswordEncoder(new BCryptPasswordEncoder(4), meterRegistry);
+
+        // Act
+        String hash = encoder.encode("secret");
+        boolean matches = encoder.matches("secret", hash);
+
+        // Assert
+        assertTrue(matches);
+        assertEquals(1, meterRegistry.get("fueltracker.auth.password").tag("operation", "encode").timer().count());
+        assertEquals(1, meterRegistry.get("fueltracker.auth.password").tag("operation", "matches").timer().count());
+
+        System.out.println("✅ Request metrics - Times password hashing");
+    }
+}
@@ -0,0 +1,53 @@
+package fi.laalo.fueltracker;
+
+import fi.laalo.fueltracker.config.SqlStatementCounter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+
+/**
+ * Runs MockMvc calls while counting the SQL statements Hibernate prepares for them,
+ * and fails when a call runs more than its budget. Async endpoints are dispatched
+ * to completion; statements run on the analytics executor count towards the call.
+ */
+public class StatementCountingMockMvc {
+
+    private final MockMvc mockMvc;
+
+    public StatementCountingMockMvc(MockMvc mockMvc) {
+        this.mockMvc = mockMvc;
+    }
+
+    /**
+     * Perform the request and assert it ran at most budget statements
+     */
+    public ResultActions perform(String endpoint, int budget, RequestBuilder request) throws Exception {
+        AtomicInteger statements = new AtomicInteger();
+        ResultActions result = SqlStatementCounter.bind(statements, () -> performToCompletion(request));
+
+        assertTrue(statements.get() <= budget,
+                endpoint + " ran " + statements.get() + " SQL statements, budget is " + budget);
+        System.out.println("   " + endpoint + ": " + statements.get() + " / " + budget + " statements");
+        return result;
+    }
+
+    private ResultActions performToCompletion(RequestBuilder request) {
+        try {
+            ResultActions result = mockMvc.perform(request);
+            MvcResult mvcResult = result.andReturn();
+            if (mvcResult.getRequest().isAsyncStarted()) {
+                mvcResult.getAsyncResult(10_000);
+                return mockMvc.perform(asyncDispatch(mvcResult));
+            }
+            return result;
+        } catch (Exception e) {
+            throw new IllegalStateException("Request failed: " + e.getMessage(), e);
+        }
+    }
+}
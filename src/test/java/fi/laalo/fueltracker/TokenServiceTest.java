@@ -0,0 +1,105 @@
+package fi.laalo.fueltracker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.laalo.fueltracker.dto.TokenResponseDTO;
+import fi.laalo.fueltracker.service.TokenService;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TokenServiceTest {
+
+    private static final String SECRET = "test-secret-that-is-at-least-32-bytes-long";
+    private static final Instant NOW = Instant.parse("2024-05-01T12:00:00Z");
+
+    private TokenService tokenService(Instant now) {
+        return new TokenService(new ObjectMapper(), SECRET, Duration.ofMinutes(15), Duration.ofDays(7),
+                Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    // Test 1: Issued tokens verify and carry the user's identity
+    @Test
+    void testIssueAndVerify() {
+        // Arrange
+        TokenService tokenService = tokenService(NOW);
+
+        // Act
+        TokenResponseDTO tokens = tokenService.issueTokens(7L, "test@example.com", List.of("ROLE_USER"));
+        TokenService.TokenClaims claims = tokenService.verify(tokens.accessToken(), TokenService.ACCESS);
+
+        // Assert
+        assertNotNull(claims);
+        assertEquals(7L, claims.userId());
+        assertEquals("test@example.com", claims.email());
+        assertEquals(List.of("ROLE_USER"), claims.roles());
+        assertEquals(900, tokens.expiresIn());
+        assertNotNull(tokenService.verify(tokens.refreshToken(), TokenService.REFRESH));
+
+        System.out.println("✅ TokenService - Issues and verifies tokens");
+    }
+
+    // Test 2: Tampered, foreign or wrong-type tokens are rejected
+    @Test
+    void testRejectsInvalidTokens() {
+        // Arrange
+        TokenService tokenService = tokenService(NOW);
+        TokenResponseDTO tokens = tokenService.issueTokens(7L, "test@example.com", List.of("ROLE_USER"));
+        String[] parts = tokens.accessToken().split("\\.");
+        TokenResponseDTO adminTokens = tokenService.issueTokens(7L, "test@example.com", List.of("ROLE_ADMIN"));
+        String forgedPayload = adminTokens.accessToken().split("\\.")[0] + "." + parts[1];
+        TokenService otherKey = new TokenService(new ObjectMapper(), SECRET + "-other", Duration.ofMinutes(15),
+                Duration.ofDays(7), Clock.fixed(NOW, ZoneOffset.UTC));
+
+        // Act & Assert
+        assertNull(tokenService.verify(forgedPayload, TokenService.ACCESS));
+        assertNull(tokenService.verify(parts[0], TokenService.ACCESS));
+        assertNull(tokenService.verify("garbage", TokenService.ACCESS));
+        assertNull(tokenService.verify(tokens.refreshToken(), TokenService.ACCESS));
+        assertNull(tokenService.verify(tokens.accessToken(), TokenService.REFRESH));
+        assertNull(otherKey.verify(tokens.accessToken(), TokenService.ACCESS));
+
+        System.out.println("✅ TokenService - Rejects tampered and wrong-type tokens");
+    }
+
+    // Test 3: Access tokens expire before refresh tokens
+    @Test
+    void testExpiry() {
+        // Arrange
+        TokenResponseDTO tokens = tokenService(NOW).issueTokens(7L, "test@example.com", List.of("ROLE_USER"));
+        TokenService later = tokenService(NOW.plus(Duration.ofMinutes(16)));
+
+        // Act & Assert
+        assertNull(later.verify(tokens.accessToken(), TokenService.ACCESS));
+        assertNotNull(later.verify(tokens.refreshToken(), TokenService.REFRESH));
+        assertNull(tokenService(NOW.plus(Duration.ofDays(8))).verify(tokens.refreshToken(), TokenService.REFRESH));
+
+        System.out.println("✅ TokenService - Tokens expire");
+    }
+
+    // Test 4: A missing secret falls back to a random key unless one is required, as in production
+    @Test
+    void testMissingSecret() {
+        // Arrange
+        Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+        TokenService randomKey = new TokenService(new ObjectMapper(), "", false, Duration.ofMinutes(15), Duration.ofDays(7), clock);
+
+        // Act & Assert
+        TokenResponseDTO tokens = randomKey.issueTokens(7L, "test@example.com", List.of("ROLE_USER"));
+        assertNotNull(randomKey.verify(tokens.accessToken(), TokenService.ACCESS));
+        assertThrows(IllegalStateException.class,
+                () -> new TokenService(new ObjectMapper(), "", true, Duration.ofMinutes(15), Duration.ofDays(7), clock));
+        assertThrows(IllegalStateException.class,
+                () -> new TokenService(new ObjectMapper(), null, true, Duration.ofMinutes(15), Duration.ofDays(7), clock));
+
+        System.out.println("✅ TokenService - Requires a secret when configured to");
+    }
+}
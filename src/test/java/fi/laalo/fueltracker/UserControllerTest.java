@@ -60,6 +60,7 @@ public class UserControllerTest {
         // Arrange
         User user = createTestUser();
         when(userService.getByEmail("test@example.com")).thenReturn(user);
+        when(userService.getUserById(1L)).thenReturn(Optional.of(user));
 
         // Act & Assert
         mockMvc.perform(get("/api/users/me"))
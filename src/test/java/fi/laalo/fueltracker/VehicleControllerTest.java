@@ -1,25 +1,35 @@
 package fi.laalo.fueltracker;
 
+import fi.laalo.fueltracker.config.AuthenticatedUser;
 import fi.laalo.fueltracker.controller.VehicleController;
+import fi.laalo.fueltracker.dto.VehicleResponseDTO;
+import fi.laalo.fueltracker.mapper.VehicleMapper;
 import fi.laalo.fueltracker.model.Vehicle;
 import fi.laalo.fueltracker.model.User;
 import fi.laalo.fueltracker.service.VehicleService;
 import fi.laalo.fueltracker.service.UserService;
+import fi.laalo.fueltracker.service.VehicleWriteLanes;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.http.MediaType;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.times;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -35,6 +45,15 @@ public class VehicleControllerTest {
     @MockitoBean
     private UserService userService;
 
+    @MockitoBean
+    private VehicleWriteLanes writeLanes;
+
+    @BeforeEach
+    void setUp() {
+        // Run the work directly, as the lane would
+        when(writeLanes.inLane(any(), any())).thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+    }
+
     private User createTestUser() {
         User user = new User();
         user.setId(1L);
@@ -71,9 +90,9 @@ public class VehicleControllerTest {
         v2.setLicensePlate("XYZ-789");
         v2.setUser(user);
 
-        List<Vehicle> vehicles = Arrays.asList(v1, v2);
+        List<VehicleResponseDTO> vehicles = Arrays.asList(VehicleMapper.toDto(v1), VehicleMapper.toDto(v2));
         when(userService.getByEmail("test@example.com")).thenReturn(user);
-        when(vehicleService.getVehiclesByUser(user)).thenReturn(vehicles);
+        when(vehicleService.getVehicleDtosByUserId(1L)).thenReturn(vehicles);
 
         // Act & Assert
         mockMvc.perform(get("/api/vehicles"))
@@ -84,7 +103,7 @@ public class VehicleControllerTest {
                 .andExpect(jsonPath("$[1].make").value("Volvo"))
                 .andExpect(jsonPath("$[1].model").value("V70"));
 
-        verify(vehicleService, times(1)).getVehiclesByUser(user);
+        verify(vehicleService, times(1)).getVehicleDtosByUserId(1L);
         System.out.println("✅ GET /api/vehicles - Returns all vehicles for user");
     }
 
@@ -97,7 +116,7 @@ public class VehicleControllerTest {
         Vehicle vehicle = createTestVehicle(user);
 
         when(userService.getByEmail("test@example.com")).thenReturn(user);
-        when(vehicleService.getById(1L)).thenReturn(vehicle);
+        when(vehicleService.getOwnedVehicleDto(1L, 1L)).thenReturn(VehicleMapper.toDto(vehicle));
 
         // Act & Assert
         mockMvc.perform(get("/api/vehicles/1"))
@@ -106,7 +125,7 @@ public class VehicleControllerTest {
                 .andExpect(jsonPath("$.model").value("Corolla"))
                 .andExpect(jsonPath("$.licensePlate").value("ABC-123"));
 
-        verify(vehicleService, times(1)).getById(1L);
+        verify(vehicleService, times(1)).getOwnedVehicleDto(1L, 1L);
         System.out.println("✅ GET /api/vehicles/{id} - Returns vehicle by ID");
     }
 
@@ -151,8 +170,8 @@ public class VehicleControllerTest {
         vehicle.setMake("Honda");
 
         when(userService.getByEmail("test@example.com")).thenReturn(user);
-        when(vehicleService.getById(1L)).thenReturn(vehicle);
-        when(vehicleService.save(any(Vehicle.class))).thenReturn(vehicle);
+        when(vehicleService.getOwnedVehicle(1L, 1L)).thenReturn(vehicle);
+        when(vehicleService.update(any(Vehicle.class), any())).thenReturn(vehicle);
 
         // Act & Assert
         mockMvc.perform(put("/api/vehicles/1")
@@ -169,7 +188,7 @@ public class VehicleControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.make").value("Honda"));
 
-        verify(vehicleService, times(1)).save(any(Vehicle.class));
+        verify(vehicleService, times(1)).update(any(Vehicle.class), any());
         System.out.println("✅ PUT /api/vehicles/{id} - Updates vehicle");
     }
 
@@ -179,16 +198,35 @@ public class VehicleControllerTest {
     void testDeleteVehicle() throws Exception {
         // Arrange
         User user = createTestUser();
-        Vehicle vehicle = createTestVehicle(user);
 
         when(userService.getByEmail("test@example.com")).thenReturn(user);
-        when(vehicleService.getById(1L)).thenReturn(vehicle);
 
         // Act & Assert
         mockMvc.perform(delete("/api/vehicles/1"))
                 .andExpect(status().isNoContent());
 
+        verify(vehicleService, times(1)).checkOwnership(1L, 1L);
         verify(vehicleService, times(1)).deleteVehicle(1L);
         System.out.println("✅ DELETE /api/vehicles/{id} - Deletes vehicle");
     }
+
+    // Test 6: Authenticated principal carries the user id, so no user lookup is needed
+    @Test
+    void testAuthenticatedUserNeedsNoLookup() throws Exception {
+        // Arrange
+        User user = createTestUser();
+        Vehicle vehicle = createTestVehicle(user);
+        AuthenticatedUser principal = new AuthenticatedUser(1L, "test@example.com", "",
+                List.of(new SimpleGrantedAuthority("ROLE_USER")));
+
+        when(vehicleService.getOwnedVehicleDto(1L, 1L)).thenReturn(VehicleMapper.toDto(vehicle));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/vehicles/1").with(user(principal)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.make").value("Toyota"));
+
+        verify(userService, never()).getByEmail(anyString());
+        System.out.println("✅ GET /api/vehicles/{id} - Uses the user id from the principal");
+    }
 }
@@ -0,0 +1,269 @@
+package fi.laalo.fueltracker;
+
+import fi.laalo.fueltracker.config.AuthenticatedUser;
+import fi.laalo.fueltracker.controller.FuelEntryController;
+import fi.laalo.fueltracker.dto.FuelEntryRequestDTO;
+import fi.laalo.fueltracker.model.ConsumptionCycle;
+import fi.laalo.fueltracker.model.FuelEntry;
+import fi.laalo.fueltracker.model.User;
+import fi.laalo.fueltracker.model.Vehicle;
+import fi.laalo.fueltracker.repository.ConsumptionCycleRepository;
+import fi.laalo.fueltracker.repository.FuelEntryRepository;
+import fi.laalo.fueltracker.repository.MonthlyRollupRepository;
+import fi.laalo.fueltracker.repository.UserRepository;
+import fi.laalo.fueltracker.repository.VehicleRepository;
+import fi.laalo.fueltracker.service.ConsumptionCalculator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Concurrent writes through FuelEntryController and the vehicle write lanes, with the
+ * real services and event listeners, against an in-memory database.
+ */
+@SpringBootTest
+@ActiveProfiles("querybudget")
+public class VehicleWriteLanesTest {
+
+    private static final int VEHICLES = 4;
+    private static final int THREADS = 16;
+    private static final int WRITES_PER_THREAD = 10;
+    private static final double INITIAL_ODOMETER = 5000.0;
+    private static final double TRIP = 100.0;
+    private static final LocalDateTime DATE_TIME = LocalDateTime.of(2024, 6, 1, 8, 0);
+    private static final AtomicInteger FIXTURES = new AtomicInteger();
+
+    @Autowired
+    private FuelEntryController controller;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private VehicleRepository vehicleRepository;
+
+    @Autowired
+    private FuelEntryRepository fuelEntryRepository;
+
+    @Autowired
+    private ConsumptionCycleRepository cycleRepository;
+
+    @Autowired
+    private MonthlyRollupRepository rollupRepository;
+
+    private User owner;
+    private AuthenticatedUser principal;
+
+    @BeforeEach
+    void setUp() {
+        // A user of its own per test, so tests do not see each other's writes
+        owner = new User();
+        owner.setEmail("lanes" + FIXTURES.incrementAndGet() + "@example.com");
+        owner.setPassword("secret");
+        owner = userRepository.save(owner);
+        principal = new AuthenticatedUser(owner.getId(), owner.getEmail(), "", List.of(new SimpleGrantedAuthority("ROLE_USER")));
+    }
+
+    private Vehicle createVehicle(Double initialOdometer) {
+        Vehicle vehicle = new Vehicle();
+        vehicle.setMake("Toyota");
+        vehicle.setModel("Corolla");
+        vehicle.setFuelType("Gasoline");
+        vehicle.setManufacturingYear(2015);
+        vehicle.setLicensePlate("LAN-" + owner.getId() + "-" + System.nanoTime());
+        vehicle.setTankCapacityLiters(50.0);
+        vehicle.setInitialOdometer(initialOdometer);
+        vehicle.setUser(owner);
+        return vehicleRepository.save(vehicle);
+    }
+
+    private FuelEntryRequestDTO trip(Long vehicleId, LocalDateTime dateTime) {
+        return new FuelEntryRequestDTO(vehicleId, dateTime, 40.0, null, TRIP, true, 1.9, 76.0, null, null);
+    }
+
+    private FuelEntryRequestDTO reading(Long vehicleId, LocalDateTime dateTime, double odometer) {
+        return new FuelEntryRequestDTO(vehicleId, dateTime, 40.0, odometer, null, false, 1.9, 76.0, null, null);
+    }
+
+    // Start the tasks together and wait for all of them
+    private void runConcurrently(List<Callable<Void>> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (Callable<Void> task : tasks) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<Void> future : futures) {
+                future.get(120, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Stored cycles must equal a calculation over the vehicle's committed entries
+    private void assertCyclesMatchEntries(Vehicle vehicle) {
+        List<FuelEntry> entries = fuelEntryRepository.findByVehicleIdOrderByDateTimeAscIdAsc(vehicle.getId());
+        List<ConsumptionCalculator.Cycle> expected = ConsumptionCalculator.calculateCycles(
+                ConsumptionCalculator.getValidEntries(entries), vehicle.getTankCapacityLiters());
+        List<ConsumptionCycle> stored = cycleRepository.findByVehicleIdOrderByToDateAscEndEntryIdAsc(vehicle.getId());
+
+        assertEquals(expected.size(), stored.size(), "cycles of vehicle " + vehicle.getId());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).endEntryId(), stored.get(i).getEndEntryId());
+            assertEquals(expected.get(i).toOdometer(), stored.get(i).getToOdometer());
+        }
+    }
+
+    // Test 1: Parallel trip entries give every vehicle strictly increasing, gap-free odometers
+    @Test
+    void testParallelTripEntriesStayMonotonic() throws Exception {
+        // Arrange: all entries share a time, so the latest odometer is the one with the highest id
+        List<Vehicle> vehicles = new ArrayList<>();
+        for (int v = 0; v < VEHICLES; v++) {
+            vehicles.add(createVehicle(INITIAL_ODOMETER));
+        }
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            tasks.add(() -> {
+                for (int i = 0; i < WRITES_PER_THREAD; i++) {
+                    controller.createEntry(trip(vehicles.get((thread + i) % VEHICLES).getId(), DATE_TIME), principal);
+                }
+                return null;
+            });
+        }
+
+        // Act
+        runConcurrently(tasks);
+
+        // Assert
+        int writesPerVehicle = THREADS * WRITES_PER_THREAD / VEHICLES;
+        for (Vehicle vehicle : vehicles) {
+            List<FuelEntry> entries = fuelEntryRepository.findByVehicleIdOrderByDateTimeAscIdAsc(vehicle.getId());
+            assertEquals(writesPerVehicle, entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                assertEquals(INITIAL_ODOMETER + (i + 1) * TRIP, entries.get(i).getOdometer(), "vehicle " + vehicle.getId() + " entry " + i);
+            }
+            assertCyclesMatchEntries(vehicle);
+        }
+
+        System.out.println("✅ VehicleWriteLanes - Parallel trip entries keep odometers monotonic");
+    }
+
+    // Test 2: Moving an entry back and forth between vehicles in parallel keeps both vehicles' cycles right
+    @Test
+    void testParallelMovesKeepBothVehiclesConsistent() throws Exception {
+        // Arrange: two vehicles with a history each, and one entry that both threads keep moving
+        Vehicle first = createVehicle(INITIAL_ODOMETER);
+        Vehicle second = createVehicle(INITIAL_ODOMETER);
+        for (int i = 0; i < 10; i++) {
+            controller.createEntry(reading(first.getId(), DATE_TIME.plusDays(i * 2L), INITIAL_ODOMETER + (i + 1) * 600), principal);
+            controller.createEntry(reading(second.getId(), DATE_TIME.plusDays(i * 2L), INITIAL_ODOMETER + (i + 1) * 500), principal);
+        }
+        Long movedId = controller.createEntry(reading(first.getId(), DATE_TIME.plusDays(9), INITIAL_ODOMETER + 3000), principal).id();
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            tasks.add(() -> {
+                for (int i = 0; i < WRITES_PER_THREAD; i++) {
+                    Vehicle target = (thread + i) % 2 == 0 ? first : second;
+                    controller.updateEntry(movedId, reading(target.getId(), DATE_TIME.plusDays(5 + i), INITIAL_ODOMETER + 2500 + i * 50), principal);
+                }
+                return null;
+            });
+        }
+
+        // Act
+        runConcurrently(tasks);
+
+        // Assert
+        assertCyclesMatchEntries(first);
+        assertCyclesMatchEntries(second);
+
+        System.out.println("✅ VehicleWriteLanes - Parallel moves keep both vehicles consistent");
+    }
+
+    // Test 3: Deletes and creates on the same vehicle in parallel keep its cycles and rollups right
+    @Test
+    void testParallelDeletesAndCreatesKeepVehicleConsistent() throws Exception {
+        // Arrange: a history spread over several months, half of which is deleted while new entries arrive
+        Vehicle vehicle = createVehicle(INITIAL_ODOMETER);
+        List<Long> deletable = new ArrayList<>();
+        for (int i = 0; i < THREADS * WRITES_PER_THREAD; i++) {
+            Long id = controller.createEntry(reading(vehicle.getId(), DATE_TIME.plusDays(i), INITIAL_ODOMETER + (i + 1) * 300), principal).id();
+            if (i % 2 == 0) {
+                deletable.add(id);
+            }
+        }
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            tasks.add(() -> {
+                for (int i = 0; i < WRITES_PER_THREAD; i++) {
+                    if (thread % 2 == 0) {
+                        controller.deleteEntry(deletable.get((thread / 2) * WRITES_PER_THREAD + i), principal);
+                    } else {
+                        controller.createEntry(reading(vehicle.getId(), DATE_TIME.plusDays(thread * WRITES_PER_THREAD + i).plusHours(12),
+                                INITIAL_ODOMETER + (thread * WRITES_PER_THREAD + i) * 300 + 150), principal);
+                    }
+                }
+                return null;
+            });
+        }
+
+        // Act
+        runConcurrently(tasks);
+
+        // Assert
+        assertCyclesMatchEntries(vehicle);
+        List<FuelEntry> entries = fuelEntryRepository.findByVehicleIdOrderByDateTimeAscIdAsc(vehicle.getId());
+        long rolledUpEntries = rollupRepository.sumByUserId(owner.getId()).stream()
+                .mapToLong(totals -> totals.getEntryCount())
+                .sum();
+        assertEquals(ConsumptionCalculator.getValidEntries(entries).size(), rolledUpEntries);
+
+        System.out.println("✅ VehicleWriteLanes - Parallel deletes and creates keep the vehicle consistent");
+    }
+
+    // Test 4: A write that fails rolls back and releases the lane
+    @Test
+    void testFailedWriteRollsBackAndReleasesLane() {
+        // Arrange: without an initial odometer the first trip entry cannot be resolved
+        Vehicle vehicle = createVehicle(null);
+
+        // Act
+        assertThrows(RuntimeException.class, () -> controller.createEntry(trip(vehicle.getId(), DATE_TIME), principal));
+        controller.createEntry(reading(vehicle.getId(), DATE_TIME, INITIAL_ODOMETER), principal);
+        controller.createEntry(trip(vehicle.getId(), DATE_TIME.plusDays(1)), principal);
+
+        // Assert
+        List<FuelEntry> entries = fuelEntryRepository.findByVehicleIdOrderByDateTimeAscIdAsc(vehicle.getId());
+        assertEquals(List.of(INITIAL_ODOMETER, INITIAL_ODOMETER + TRIP), entries.stream().map(FuelEntry::getOdometer).toList());
+
+        System.out.println("✅ VehicleWriteLanes - Failed writes roll back and free the lane");
+    }
+}